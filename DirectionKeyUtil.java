@@ -1,27 +1,72 @@
 package com.example.linxinggl.hey;
 
+import android.animation.ValueAnimator;
+import android.annotation.TargetApi;
 import android.app.Activity;
 import android.app.Application;
 import android.app.Dialog;
 import android.app.Fragment;
 import android.content.Context;
-import android.graphics.Color;
+import android.content.res.ColorStateList;
+import android.content.res.Resources;
+import android.content.res.XmlResourceParser;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.GradientDrawable;
 import android.graphics.drawable.LayerDrawable;
+import android.graphics.drawable.NinePatchDrawable;
 import android.graphics.drawable.StateListDrawable;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.os.Trace;
 import android.util.Log;
+import android.util.SparseArray;
+import android.view.ActionMode;
+import android.view.Choreographer;
+import android.view.KeyEvent;
+import android.view.KeyboardShortcutGroup;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.MotionEvent;
+import android.view.SearchEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.view.ViewTreeObserver;
+import android.view.Window;
+import android.view.WindowManager;
+import android.view.accessibility.AccessibilityEvent;
 import android.widget.AbsListView;
 import android.widget.Button;
+import android.widget.HorizontalScrollView;
 import android.widget.ImageView;
+import android.widget.ScrollView;
 
+import org.xmlpull.v1.XmlPullParser;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * 方向键 工具类
@@ -31,8 +76,19 @@ import java.util.Arrays;
  * <p>
  * 使用方法：
  * 自适应Activity ：在 Application.onCreate() 里调用 {@link DirectionKeyUtil#init(Application, boolean)}
+ * 预先生成图层 ：改为调用 {@link DirectionKeyUtil#init(Application, boolean, int...)}，传入常用的 selector 或 layout
  * 自适应Fragment ：在 BaseFragment.onCreate() 里调用 {@link DirectionKeyUtil#initFragment(Fragment, boolean)}
  * 自适应Diaglog ：在 BaseDialog.onCreate() 里调用 {@link DirectionKeyUtil#initDialog(Dialog, boolean)}
+ * 延迟装饰 ：改为调用 {@link DirectionKeyUtil#init(Application, boolean, boolean)}，View 第一次获取焦点时才添加高亮图层
+ * 共用高亮框 ：初始化前调用 {@link DirectionKeyUtil#setOverlayMode(boolean, long)}，整个窗口只绘制一个高亮框
+ * 还原 ：调用 {@link DirectionKeyUtil#restoreView(View)}，恢复初始化前的图层
+ * 耗时统计 ：初始化前调用 {@link DirectionKeyUtil#setOnMetricsListener(OnMetricsListener)}
+ * 快速焦点查找 ：初始化前调用 {@link DirectionKeyUtil#setFocusSearchMode(boolean, int)}，方向键按网格索引查找下一个焦点
+ * 长按加速 ：初始化前调用 {@link DirectionKeyUtil#setKeyRepeatMode(boolean, float, float, long)}，按住方向键时每帧移动焦点
+ * 分批装饰 ：初始化前调用 {@link DirectionKeyUtil#setBatchMode(boolean, long)}，新添加的子View按每帧的时间预算分批初始化
+ * 高亮框样式 ：初始化前调用 {@link DirectionKeyUtil#setFocusStyle(FocusStyle)}，或 {@link DirectionKeyUtil#setFocusStyle(View, FocusStyle)} 给某个界面单独设置
+ * <p>
+ * 重复初始化同一个View不会重复添加图层
  */
 public class DirectionKeyUtil {
 
@@ -45,21 +101,40 @@ public class DirectionKeyUtil {
 
     private static Application.ActivityLifecycleCallbacks callback;
 
+    private static boolean lazy; // 是否延迟装饰
+    private static boolean overlay; // 是否整个窗口共用一个高亮框
+    private static long overlayMoveDuration; // 共用高亮框的移动动画时长
+    private static final WeakHashMap<View, WindowState> windowStates = new WeakHashMap<>(); // 各窗口（或Fragment）根View的状态
+    private static final WeakHashMap<View, Decoration> decorations = new WeakHashMap<>(); // 已装饰的View及其装饰记录
+    private static final WeakHashMap<View, Boolean> initializedLists = new WeakHashMap<>(); // 延迟装饰模式下，已初始化的AbsListView
+
     /**
      * 初始化
      *
      * @param forceUseFrame true:强制使用默认的高亮框。 false:若有定义的focus图层，则使用自定义的
      */
     public static synchronized void init(Application application, final boolean forceUseFrame) {
+        init(application, forceUseFrame, false);
+    }
+
+    /**
+     * 初始化
+     *
+     * @param forceUseFrame true:强制使用默认的高亮框。 false:若有定义的focus图层，则使用自定义的
+     * @param lazy          true:延迟装饰，View 第一次获取焦点时才添加高亮图层，Activity 启动时不再遍历整个View树。 false:启动时装饰全部可点击的View
+     */
+    public static synchronized void init(Application application, final boolean forceUseFrame, boolean lazy) {
         log("init()");
         if (application == null)
             return;
+        DirectionKeyUtil.lazy = lazy;
         if (callback == null)
             callback = new Application.ActivityLifecycleCallbacks() {
                 @Override
                 public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
                     long t = System.currentTimeMillis();
-                    DirectionKeyUtil.initView(activity.getWindow().getDecorView(), forceUseFrame);
+                    DirectionKeyUtil.installKeyDispatcher(activity.getWindow());
+                    DirectionKeyUtil.initWindow(activity.getWindow().getDecorView(), forceUseFrame, true, activity.getClass().getSimpleName());
                     DirectionKeyUtil.log("初始化 " + activity.getClass().getSimpleName() + "，耗时 " + (System.currentTimeMillis() - t));
                 }
 
@@ -88,13 +163,238 @@ public class DirectionKeyUtil {
 
                 @Override
                 public void onActivityDestroyed(Activity activity) {
-
+                    DirectionKeyUtil.releaseWindow(activity.getWindow().peekDecorView());
                 }
             };
         application.unregisterActivityLifecycleCallbacks(callback);
         application.registerActivityLifecycleCallbacks(callback);
     }
 
+    /**
+     * 初始化，并在后台线程预先生成指定资源的高亮图层，首次进入页面时只需克隆
+     *
+     * @param forceUseFrame true:强制使用默认的高亮框。 false:若有定义的focus图层，则使用自定义的
+     * @param warmUpResIds  drawable（如 selector）或 layout 资源ID，详见 {@link DirectionKeyUtil#warmUp(Context, boolean, int...)}
+     */
+    public static synchronized void init(Application application, boolean forceUseFrame, int... warmUpResIds) {
+        init(application, forceUseFrame);
+        warmUp(application, forceUseFrame, warmUpResIds);
+    }
+
+    private static final String ANDROID_NAMESPACE = "http://schemas.android.com/apk/res/android";
+    private static final String[] WARM_UP_ATTRS = {"background", "foreground", "src"}; // layout 中需要预先生成的图层属性
+    private static final int[] WARM_UP_STATES = {android.R.attr.state_focused, android.R.attr.state_selected};
+    private static final ArrayList<Drawable.ConstantState> warmedUpStates = new ArrayList<>(); // 持有预先生成过的原图层，避免资源缓存被回收后无法命中
+    private static ExecutorService warmUpExecutor;
+
+    /**
+     * 在后台线程预先生成指定资源的高亮图层（focused 与 selected 两种），之后装饰使用这些资源的View时直接从缓存克隆
+     * <p>
+     * layout 只解析 XML 中 background、foreground、src 引用的 drawable 及 include 的 layout，不会 inflate；
+     * 共用高亮框模式下不修改View的图层，无需预先生成
+     *
+     * @param forceUseFrame 与初始化时的参数一致
+     * @param resIds        drawable（如 selector）或 layout 资源ID
+     */
+    public static synchronized void warmUp(Context context, final boolean forceUseFrame, final int... resIds) {
+        if (context == null || resIds == null || resIds.length == 0 || isOverlayMode())
+            return;
+        final Context appContext = context.getApplicationContext() == null ? context : context.getApplicationContext();
+        if (warmUpExecutor == null)
+            warmUpExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "DirectionKeyUtil-warmUp");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        warmUpExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long t = System.currentTimeMillis();
+                HashSet<Integer> visited = new HashSet<>();
+                for (int resId : resIds)
+                    warmUpRes(appContext, resId, forceUseFrame, visited);
+                log("预先生成 " + visited.size() + " 个资源，耗时 " + (System.currentTimeMillis() - t));
+            }
+        });
+    }
+
+    /**
+     * 预先生成资源的高亮图层，layout 则处理其引用的 drawable
+     *
+     * @param visited 已处理的资源ID
+     */
+    private static void warmUpRes(Context context, int resId, boolean forceUseFrame, HashSet<Integer> visited) {
+        if (resId == 0 || !visited.add(resId))
+            return;
+        Resources res = context.getResources();
+        try {
+            if ("layout".equals(res.getResourceTypeName(resId))) {
+                XmlResourceParser parser = res.getLayout(resId);
+                try {
+                    for (int type = parser.next(); type != XmlPullParser.END_DOCUMENT; type = parser.next()) {
+                        if (type != XmlPullParser.START_TAG)
+                            continue;
+                        if ("include".equals(parser.getName()))
+                            warmUpRes(context, parser.getAttributeResourceValue(null, "layout", 0), forceUseFrame, visited);
+                        for (String attr : WARM_UP_ATTRS)
+                            warmUpRes(context, parser.getAttributeResourceValue(ANDROID_NAMESPACE, attr, 0), forceUseFrame, visited);
+                    }
+                } finally {
+                    parser.close();
+                }
+            } else {
+                warmUpDrawable(context, res.getDrawable(resId), forceUseFrame);
+            }
+        } catch (Exception e) { // 颜色值、不存在的资源等，忽略
+            log("预先生成失败 " + resId + " " + e.getMessage());
+        }
+    }
+
+    /**
+     * 按装饰时的流程生成一遍图层，结果留在缓存中
+     */
+    private static void warmUpDrawable(Context context, Drawable drawable, boolean forceUseFrame) {
+        if (drawable == null || drawable.getConstantState() == null)
+            return;
+        synchronized (warmedUpStates) {
+            warmedUpStates.add(drawable.getConstantState());
+        }
+        for (int state : WARM_UP_STATES) {
+            Drawable base = forceUseFrame ? deleteState(context, drawable, state) : drawable;
+            generateDrawable(context, base, state, false, defaultFocusStyle);
+            generateDrawable(context, null, state, false, defaultFocusStyle); // 6.0以上版本添加至无图层的foreground
+        }
+    }
+
+    /**
+     * 设置高亮框的绘制方式，须在初始化前调用
+     *
+     * @param overlay      true:整个窗口共用一个高亮框，绘制在获取焦点的View之上，不修改View的图层（4.3以上版本有效）。 false:给每个可点击的View添加高亮图层
+     * @param moveDuration 共用高亮框在View之间移动的动画时长（毫秒），0表示不使用动画
+     */
+    public static synchronized void setOverlayMode(boolean overlay, long moveDuration) {
+        DirectionKeyUtil.overlay = overlay;
+        DirectionKeyUtil.overlayMoveDuration = moveDuration;
+    }
+
+    public static final int FALLBACK_SYSTEM = 0; // 索引中找不到时交给系统的 FocusFinder
+    public static final int FALLBACK_WRAP = 1; // 索引中找不到时从同一行（列）的另一端查找，仍找不到则交给系统
+    public static final int FALLBACK_NONE = 2; // 索引中找不到时焦点不动
+
+    private static boolean focusSearch; // 是否使用焦点索引查找下一个焦点
+    private static int focusSearchFallback = FALLBACK_SYSTEM;
+
+    /**
+     * 设置方向键的焦点查找方式，须在初始化前调用
+     * <p>
+     * 开启后每个窗口维护一个可获取焦点View的网格索引，随子View的添加、移除增量更新；
+     * 方向键先按原流程分发，View 未处理时只在焦点所在方向上邻近的格子里查找，不再像系统的 FocusFinder 一样遍历整个窗口，
+     * 适合有大量卡片的页面。以下情况仍由系统查找：焦点在自行查找焦点的View中（如 RecyclerView、AbsListView 的item），
+     * 焦点View指定了 nextFocusXxxId，下一个焦点在其他滚动容器中，或已到滚动容器的边缘
+     *
+     * @param enable   true:使用焦点索引。 false:使用系统的 FocusFinder
+     * @param fallback 窗口中找不到下一个焦点时的处理：{@link #FALLBACK_SYSTEM}、{@link #FALLBACK_WRAP}、{@link #FALLBACK_NONE}
+     */
+    public static synchronized void setFocusSearchMode(boolean enable, int fallback) {
+        DirectionKeyUtil.focusSearch = enable;
+        DirectionKeyUtil.focusSearchFallback = fallback;
+    }
+
+    private static boolean keyRepeat; // 是否合并长按方向键的重复事件
+    private static float keyRepeatInitialRate; // 开始时每秒移动的步数
+    private static float keyRepeatMaxRate; // 最大每秒移动的步数
+    private static long keyRepeatAccelerationMillis; // 加速到最大速率的时长
+
+    /**
+     * 设置长按方向键时的焦点移动方式，须在初始化前调用（4.1以上版本有效）
+     * <p>
+     * 按住方向键时系统的重复事件不再逐个分发，改为每帧按当前速率移动焦点（一帧最多移动 {@link KeyRepeater#MAX_STEPS_PER_FRAME} 步，
+     * 来不及的步数直接丢弃），焦点变化、图层状态切换及滚动合并到同一帧内完成，不会积压事件；
+     * 速率在 accelerationMillis 内从 initialRate 线性增加到 maxRate
+     *
+     * @param enable             true:合并重复事件。 false:按系统的重复事件逐个处理
+     * @param initialRate        开始时每秒移动的步数
+     * @param maxRate            最大每秒移动的步数
+     * @param accelerationMillis 从 initialRate 加速到 maxRate 的时长（毫秒），0表示直接使用 maxRate
+     */
+    public static synchronized void setKeyRepeatMode(boolean enable, float initialRate, float maxRate, long accelerationMillis) {
+        DirectionKeyUtil.keyRepeat = enable && initialRate > 0 && maxRate > 0;
+        DirectionKeyUtil.keyRepeatInitialRate = initialRate;
+        DirectionKeyUtil.keyRepeatMaxRate = Math.max(initialRate, maxRate);
+        DirectionKeyUtil.keyRepeatAccelerationMillis = accelerationMillis;
+    }
+
+    private static FocusStyle defaultFocusStyle = FocusStyle.DEFAULT; // 默认的高亮框样式
+    private static final WeakHashMap<View, FocusStyle> focusStyles = new WeakHashMap<>(); // 单独设置了高亮框样式的界面根View
+
+    /**
+     * 设置默认的高亮框样式，须在初始化前调用
+     * <p>
+     * 未设置时使用 {@link FocusStyle#DEFAULT}，即应用的 R.drawable.focused_frame；设置后所有高亮框都按该样式绘制
+     *
+     * @param style 高亮框样式，null 表示恢复 {@link FocusStyle#DEFAULT}
+     */
+    public static synchronized void setFocusStyle(FocusStyle style) {
+        DirectionKeyUtil.defaultFocusStyle = style == null ? FocusStyle.DEFAULT : style;
+    }
+
+    /**
+     * 给某个界面（该View及其所有子View）单独设置高亮框样式，须在初始化该界面前调用
+     * <p>
+     * 样式相同的高亮框共用同一个 ConstantState，界面再多也只按样式数量占用内存
+     *
+     * @param root  界面的根View，如 Activity 的 DecorView、Fragment 的根View
+     * @param style 高亮框样式，null 表示使用默认样式
+     */
+    public static void setFocusStyle(View root, FocusStyle style) {
+        if (root == null)
+            return;
+        synchronized (focusStyles) {
+            if (style == null)
+                focusStyles.remove(root);
+            else
+                focusStyles.put(root, style);
+        }
+    }
+
+    /**
+     * 获取View使用的高亮框样式：离它最近的设置了样式的父View的样式，都没有时为默认样式
+     */
+    private static FocusStyle resolveFocusStyle(View view) {
+        synchronized (focusStyles) {
+            if (focusStyles.isEmpty())
+                return defaultFocusStyle;
+            for (Object v = view; v instanceof View; v = ((View) v).getParent()) {
+                FocusStyle style = focusStyles.get(v);
+                if (style != null)
+                    return style;
+            }
+        }
+        return defaultFocusStyle;
+    }
+
+    private static boolean batch; // 是否分批初始化新添加的子View
+    private static long batchFrameBudgetNanos; // 每帧用于初始化的时间
+
+    /**
+     * 设置新添加的子View的初始化方式，须在初始化前调用（4.1以上版本有效）
+     * <p>
+     * 大布局 inflate 或列表刷新一次添加大量子View时，不再在 addView 中同步初始化整棵子树，
+     * 而是放入窗口的队列，每帧最多用 frameBudgetMillis 毫秒分批初始化：屏幕内、离焦点近的子树优先；
+     * 子树初始化完成前获取焦点的View会立即装饰
+     *
+     * @param enable            true:分批初始化。 false:添加时同步初始化
+     * @param frameBudgetMillis 每帧用于初始化的时长（毫秒），至少处理一个View
+     */
+    public static synchronized void setBatchMode(boolean enable, long frameBudgetMillis) {
+        DirectionKeyUtil.batch = enable;
+        DirectionKeyUtil.batchFrameBudgetNanos = Math.max(1, frameBudgetMillis) * 1000000;
+    }
+
     /**
      * 初始化Fragment
      *
@@ -104,7 +404,7 @@ public class DirectionKeyUtil {
         log("initDialog()");
         if (fragment == null)
             return;
-        initView(fragment.getView(), forceUseFrame);
+        initWindow(fragment.getView(), forceUseFrame, false, fragment.getClass().getSimpleName());
     }
 
     /**
@@ -116,278 +416,2684 @@ public class DirectionKeyUtil {
         log("initDialog()");
         if (dialog == null)
             return;
-        initView(dialog.getWindow().getDecorView(), forceUseFrame);
+        installKeyDispatcher(dialog.getWindow());
+        initWindow(dialog.getWindow().getDecorView(), forceUseFrame, true, dialog.getClass().getSimpleName());
     }
 
     /**
-     * 初始化该view及其所有子view
+     * 初始化窗口（或Fragment）的根View
+     * <p>
+     * 共用高亮框模式下给窗口安装一个高亮框，Fragment 使用所在窗口的高亮框；
+     * 延迟装饰模式下只安装一个焦点监听，View 获取焦点时再装饰；
+     * 这两种模式下，8.0以下版本可点击的View默认不可获取焦点，仍需遍历设置 setFocusable(true)，但不生成图层；
+     * 使用焦点索引时也需遍历，登记已有的View
      *
-     * @param forceUseFrame 强制使用默认的高亮框
+     * @param isWindowRoot 是否为窗口的根View
+     * @param name         窗口名称，用于统计
      */
-    public static void initView(View view, final boolean forceUseFrame) {
-        if (view == null)
-            return;
-        if (view.hasOnClickListeners() || view instanceof Button) { // 可点击的View才需要focus状态
-            addFocusStateToView(view, forceUseFrame); // 添加focused图层给View
+    private static void initWindow(View root, boolean forceUseFrame, boolean isWindowRoot, String name) {
+        if (root == null)
             return;
+        if (metricsListener != null)
+            obtainWindowState(root).name = name;
+        if (focusSearch && isWindowRoot && root instanceof ViewGroup)
+            obtainWindowState(root).setFocusIndex(root);
+        if (isBatchMode() && isWindowRoot)
+            obtainWindowState(root).setScheduler(root, forceUseFrame);
+        long start = beginDecorating(root, "DirectionKeyUtil.initView");
+        try {
+            if (isOverlayMode()) {
+                if (isWindowRoot && root instanceof ViewGroup)
+                    obtainWindowState(root).setFocusOverlay(root, overlayMoveDuration);
+            } else if (lazy) {
+                obtainWindowState(root).setLazyFocusListener(root, forceUseFrame);
+            } else {
+                initView(root, forceUseFrame);
+                return;
+            }
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O || focusSearch)
+                initView(root, forceUseFrame);
+        } finally {
+            endDecorating(start);
+            reportMetrics(root);
         }
-        if (view instanceof AbsListView) { // AbsListView比较特殊，item获取焦点时，是selected状态
-            ((AbsListView) view).setOnHierarchyChangeListener(new ViewGroup.OnHierarchyChangeListener() {
-                @Override
-                public void onChildViewAdded(View parent, View child) {
-//                    log("ListView---onChildViewAdded---" + parent + "---" + child);
-                    addSelectStateToView(child, forceUseFrame); // 给item添加selected图层
-                }
+    }
 
-                @Override
-                public void onChildViewRemoved(View parent, View child) {
+    /**
+     * 是否使用共用高亮框
+     */
+    private static boolean isOverlayMode() {
+        return overlay && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    }
 
-                }
-            });
-        } else if (view instanceof ViewGroup) {
+    /**
+     * 是否分批初始化新添加的子View
+     */
+    private static boolean isBatchMode() {
+        return batch && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+    }
 
-            ViewGroup viewGroup = (ViewGroup) view;
-            viewGroup.setOnHierarchyChangeListener(new ViewGroup.OnHierarchyChangeListener() {
-                @Override
-                public void onChildViewAdded(View parent, View child) {
-//                    log("ViewGroup---onChildViewAdded---" + parent + "---" + child);
-                    initView(child, forceUseFrame); // 初始化子View
-                }
+    /**
+     * 初始化时是否给View添加图层，延迟装饰与共用高亮框模式下不添加
+     */
+    private static boolean decorateOnInit() {
+        return !lazy && !isOverlayMode();
+    }
 
-                @Override
-                public void onChildViewRemoved(View parent, View child) {
+    private static WindowState obtainWindowState(View root) {
+        WindowState state = windowStates.get(root);
+        if (state == null) {
+            state = new WindowState(root);
+            windowStates.put(root, state);
+        }
+        return state;
+    }
 
-                }
-            });
+    /**
+     * 释放窗口的焦点监听、共用高亮框，Activity 销毁时自动调用
+     */
+    private static void releaseWindow(View root) {
+        if (root == null)
+            return;
+        reportMetrics(root);
+        WindowState state = windowStates.remove(root);
+        if (state != null)
+            state.release(root);
+    }
 
-            // 初始化子View
-            for (int i = 0; i < viewGroup.getChildCount(); i++) {
-                initView(viewGroup.getChildAt(i), forceUseFrame);
-            }
+    /**
+     * 获取仍存活的已装饰View的数量，用于检查长时间运行后是否有View未被回收（需在主线程调用）
+     */
+    public static int getDecoratedViewCount() {
+        return decorations.size();
+    }
+
+    private static OnMetricsListener metricsListener;
+    private static Metrics currentMetrics; // 当前正在装饰的窗口的统计
+    private static FocusIndex currentFocusIndex; // 当前正在装饰的窗口的焦点索引
+    private static Thread decoratingThread; // 统计只计入主线程上的装饰，不含预先生成
+    private static int decoratingDepth; // 嵌套的装饰层数，只统计最外层的耗时
+
+    /**
+     * 装饰耗时统计，数值为该窗口（或Fragment）累计的结果
+     */
+    public static final class Metrics {
+        public int visitedViews; // 遍历的View数
+        public int decoratedViews; // 添加图层的View数
+        public int reflectionCalls; // 读取 selector 图层的反射调用次数（10.0以下版本）
+        public int cacheHits; // 图层缓存命中次数
+        public int cacheMisses; // 图层缓存未命中次数
+        public long initViewNanos; // 初始化View树的耗时，含生成、删除图层（纳秒）
+        public long generateDrawableNanos; // 生成图层的耗时（纳秒）
+        public long deleteStateNanos; // 删除图层的耗时（纳秒）
+
+        Metrics copy() {
+            Metrics copy = new Metrics();
+            copy.visitedViews = visitedViews;
+            copy.decoratedViews = decoratedViews;
+            copy.reflectionCalls = reflectionCalls;
+            copy.cacheHits = cacheHits;
+            copy.cacheMisses = cacheMisses;
+            copy.initViewNanos = initViewNanos;
+            copy.generateDrawableNanos = generateDrawableNanos;
+            copy.deleteStateNanos = deleteStateNanos;
+            return copy;
+        }
+
+        @Override
+        public String toString() {
+            return "visited=" + visitedViews + ", decorated=" + decoratedViews + ", reflection=" + reflectionCalls
+                    + ", cacheHits=" + cacheHits + ", cacheMisses=" + cacheMisses
+                    + ", initView=" + initViewNanos / 1000 + "us, generateDrawable=" + generateDrawableNanos / 1000
+                    + "us, deleteState=" + deleteStateNanos / 1000 + "us";
         }
     }
 
     /**
-     * 添加focused图层给View
-     *
-     * @param deleteOriginalFocusStateDrawable 是否删除原focused图层
+     * 装饰耗时统计的监听
      */
-    private static void addFocusStateToView(View view, boolean deleteOriginalFocusStateDrawable) {
-        addStateToView(view, android.R.attr.state_focused, deleteOriginalFocusStateDrawable, true);
+    public interface OnMetricsListener {
+        /**
+         * 窗口（或Fragment）初始化完成及 Activity 销毁时回调，在主线程
+         *
+         * @param window  窗口名称（Activity、Dialog、Fragment 的类名）
+         * @param metrics 该窗口累计的统计
+         */
+        void onMetrics(String window, Metrics metrics);
     }
 
     /**
-     * 添加selected图层给View
-     *
-     * @param deleteOriginalSelectStateDrawable 是否删除原selected图层
+     * 设置装饰耗时统计的监听，须在初始化前调用；null 表示关闭统计
+     * <p>
+     * 无论是否开启统计，4.3以上版本都会记录 android.os.Trace 区段，可在 systrace/Perfetto 中查看
      */
-    private static void addSelectStateToView(View view, boolean deleteOriginalSelectStateDrawable) {
-        addStateToView(view, android.R.attr.state_selected, deleteOriginalSelectStateDrawable, false);
+    public static synchronized void setOnMetricsListener(OnMetricsListener listener) {
+        metricsListener = listener;
     }
 
     /**
-     * 添加指定状态图层给View
+     * 开始一次装饰（初始化窗口、添加子View、延迟装饰）：记录 Trace 区段，开启统计时之后的计数计入 view 所在的窗口，
+     * 使用焦点索引时之后初始化的View登记到 view 所在窗口的索引
      *
-     * @param targetState                       指定状态
-     * @param deleteOriginalTargetStateDrawable 是否删除原有重复状态的图层
-     * @param setFocusable                      是否设置 setFocusable(true)
+     * @return 开始时间（纳秒），未开启统计且未使用焦点索引时为 0
      */
-    private static void addStateToView(View view, int targetState, boolean deleteOriginalTargetStateDrawable, boolean setFocusable) {
-        if (setFocusable)
-            view.setFocusable(true);
-        if (deleteOriginalTargetStateDrawable)
-            deleteStateOfView(view, targetState);
+    private static long beginDecorating(View view, String section) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+            Trace.beginSection(section);
+        if (metricsListener == null && !focusSearch)
+            return 0;
+        if (decoratingDepth++ == 0) {
+            View root = view.getRootView();
+            WindowState state = windowStates.get(view);
+            if (state == null)
+                state = windowStates.get(root);
+            currentMetrics = state == null || metricsListener == null ? null : state.metrics;
+            WindowState windowState = windowStates.get(root); // Fragment 使用所在窗口的索引
+            currentFocusIndex = windowState == null ? null : windowState.focusIndex;
+            decoratingThread = Thread.currentThread();
+        }
+        return System.nanoTime();
+    }
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) // 6.0以上版本，可以setForeground，但对Button无效
-            if (view instanceof Button)
-                addStateToBg(view, targetState, false);
-            else
-                view.setForeground(generateDrawable(view.getContext(), view.getForeground(), targetState, false));
-        else {
-            if (view instanceof ImageView) // 若是ImageView，则添加至Image
-                addStateToImg((ImageView) view, targetState, false);
-            else
-                addStateToBg(view, targetState, false);
+    private static void endDecorating(long start) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+            Trace.endSection();
+        if (start == 0)
+            return;
+        if (--decoratingDepth == 0) {
+            if (currentMetrics != null)
+                currentMetrics.initViewNanos += System.nanoTime() - start;
+            currentMetrics = null;
+            currentFocusIndex = null;
         }
     }
 
-    private static void addStateToImg(ImageView imageView, int targetState, boolean deleteOriginalTargetStateDrawable) {
-        imageView.setImageDrawable(generateDrawable(imageView.getContext(), imageView.getDrawable(), targetState, deleteOriginalTargetStateDrawable));
+    /**
+     * 获取当前装饰的窗口的统计，未开启统计或不在主线程时返回 null
+     */
+    private static Metrics metrics() {
+        Metrics metrics = currentMetrics;
+        return metrics != null && Thread.currentThread() == decoratingThread ? metrics : null;
     }
 
-    private static void addStateToBg(View view, int targetState, boolean deleteOriginalTargetStateDrawable) {
-        view.setBackground(generateDrawable(view.getContext(), view.getBackground(), targetState, deleteOriginalTargetStateDrawable));
+    private static void reportMetrics(View root) {
+        OnMetricsListener listener = metricsListener;
+        if (listener == null)
+            return;
+        WindowState state = windowStates.get(root);
+        if (state != null)
+            listener.onMetrics(state.name, state.metrics.copy());
     }
 
     /**
-     * 生成带有指定状态图层的Drawable
+     * 初始化该view及其所有子view
      *
-     * @param originalDrawable                  原先的 Drawable
-     * @param targetState                       指定的状态
-     * @param deleteOriginalTargetStateDrawable 是否删除原有重复状态的图层
+     * @param forceUseFrame 强制使用默认的高亮框
      */
-    private static Drawable generateDrawable(Context context, Drawable originalDrawable, int targetState, boolean deleteOriginalTargetStateDrawable) {
-        if (originalDrawable instanceof StateListDrawable) { // StateListDrawable 即 drawable-selector 资源文件生成的类
-            StateListDrawable sld = (StateListDrawable) originalDrawable;
-            try {
-                Class<? extends StateListDrawable> sldClass = sld.getClass();
-                int count = (int) sldClass.getMethod("getStateCount").invoke(sld);
-                Method mGetStateDrawable = sldClass.getMethod("getStateDrawable", int.class);
-                Method mGetStateSet = sldClass.getMethod("getStateSet", int.class);
-
-                // 原StateListDrawable中需要使用的图层的容器
-                ArrayList<int[]> stateSetList = new ArrayList();
-                ArrayList<Drawable> stateDrawableList = new ArrayList();
-                // 需要添加的图层的容器
-                ArrayList<int[]> newStateSetList = new ArrayList();
-                ArrayList<Drawable> newStateDrawableList = new ArrayList();
-
-//                log("修改前");
-                // 取出原来的图层
-                for (int i = 0; i < count; i++) {
-                    int[] stateSet = (int[]) mGetStateSet.invoke(sld, i);
-//                    log(Arrays.toString(stateSet));
-                    if (deleteOriginalTargetStateDrawable && hasStateInSet(stateSet, targetState)) // 若要删除重复状态图层，则不取出使用
-                        continue;
-                    stateSetList.add(stateSet);
-                    stateDrawableList.add((Drawable) mGetStateDrawable.invoke(sld, i));
-                }
+    public static void initView(View view, final boolean forceUseFrame) {
+        if (view == null || !initSingleView(view, forceUseFrame))
+            return;
+        // 初始化子View
+        ViewGroup viewGroup = (ViewGroup) view;
+        for (int i = 0; i < viewGroup.getChildCount(); i++) {
+            initView(viewGroup.getChildAt(i), forceUseFrame);
+        }
+    }
 
-                // 生成新的图层
-                for (int i = 0; i < stateSetList.size(); i++) {
-                    int[] stateSet = stateSetList.get(i);
-                    if (!hasStateInSet(stateSet, targetState)) {
-                        int[] targetStateSet = new int[stateSet.length + 1];
-                        System.arraycopy(stateSet, 0, targetStateSet, 0, stateSet.length);
-                        targetStateSet[targetStateSet.length - 1] = targetState;
-                        if (!hasStateSetInList(stateSetList, targetStateSet)) {
-                            newStateSetList.add(targetStateSet);
-                            newStateDrawableList.add(generateFrameLayerDrawable(context, stateDrawableList.get(i)));
-                        }
-                    }
-                }
-//                log("修改后");
-                // 组装图层
-                if (newStateSetList.size() > 0) {
-                    sld = new StateListDrawable();
-                    for (int i = 0; i < newStateSetList.size(); i++) {
-                        sld.addState(newStateSetList.get(i), newStateDrawableList.get(i));
-//                        log(Arrays.toString(newStateSetList.get(i)));
-                    }
-                    for (int i = 0; i < stateSetList.size(); i++) {
-                        sld.addState(stateSetList.get(i), stateDrawableList.get(i));
-//                        log(Arrays.toString(stateSetList.get(i)));
+    /**
+     * 初始化单个View，不处理子View
+     *
+     * @return 是否还需初始化其子View
+     */
+    private static boolean initSingleView(View view, boolean forceUseFrame) {
+        Metrics metrics = metrics();
+        if (metrics != null)
+            metrics.visitedViews++;
+        boolean focusTarget = isFocusTarget(view);
+        if (focusSearch && (focusTarget || view instanceof AbsListView || view.isFocusable() && !(view instanceof ViewGroup)))
+            indexFocusable(view); // 登记到焦点索引，可获取焦点的ViewGroup（如ScrollView）由系统处理
+        if (focusTarget) { // 可点击的View才需要focus状态
+            if (decorateOnInit())
+                addFocusStateToView(view, forceUseFrame); // 添加focused图层给View
+            else
+                view.setFocusable(true); // 获取焦点时再添加图层，或由共用高亮框绘制
+            return false;
+        }
+        if (view instanceof AbsListView) { // AbsListView比较特殊，item获取焦点时，是selected状态
+            if (decorateOnInit()) // 延迟装饰时AbsListView获取焦点时再处理，共用高亮框时绘制在选中的item上
+                initListView((AbsListView) view, forceUseFrame, false);
+        } else if (isRecyclerView(view)) { // RecyclerView的item会被回收复用，每个item只初始化一次
+            initRecyclerView((ViewGroup) view, forceUseFrame);
+        } else if (view instanceof ViewGroup) {
+            setChildListener((ViewGroup) view, ChildListener.TYPE_GROUP, forceUseFrame); // 监听新添加的子View
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 初始化AbsListView，给item添加selected图层
+     *
+     * @param initChildren 是否同时处理已有的item
+     */
+    private static void initListView(AbsListView listView, boolean forceUseFrame, boolean initChildren) {
+        setChildListener(listView, ChildListener.TYPE_LIST, forceUseFrame); // 给新添加的item添加selected图层
+        if (initChildren) {
+            for (int i = 0; i < listView.getChildCount(); i++)
+                addSelectStateToView(listView.getChildAt(i), forceUseFrame);
+        }
+    }
+
+    private static final WeakHashMap<View, Boolean> initializedItems = new WeakHashMap<>(); // 已初始化的RecyclerView item
+    private static final HashMap<Class<?>, Boolean> recyclerViewClasses = new HashMap<>(); // 各View类是否为RecyclerView
+    private static final String[] RECYCLER_VIEW_CLASS_NAMES = {"androidx.recyclerview.widget.RecyclerView", "android.support.v7.widget.RecyclerView"};
+
+    /**
+     * 是否为RecyclerView，按类名判断，不依赖RecyclerView库
+     */
+    private static boolean isRecyclerView(View view) {
+        if (!(view instanceof ViewGroup))
+            return false;
+        Class<?> viewClass = view.getClass();
+        Boolean result = recyclerViewClasses.get(viewClass);
+        if (result == null) {
+            result = false;
+            for (Class<?> c = viewClass; c != null && c != ViewGroup.class && !result; c = c.getSuperclass()) {
+                for (String name : RECYCLER_VIEW_CLASS_NAMES) {
+                    if (name.equals(c.getName())) {
+                        result = true;
+                        break;
                     }
                 }
-                return sld;
-            } catch (Exception e) {
-                e.printStackTrace();
-                log(e.getMessage());
-            }
-        } else { // 非drawable-selector资源文件生成的Drawable
-            StateListDrawable sld = new StateListDrawable();
-            if (originalDrawable == null) {
-                sld.addState(new int[]{targetState}, getFrameDrawable());
-            } else {
-                sld.addState(new int[]{targetState}, generateFrameLayerDrawable(context, originalDrawable));
-                sld.addState(new int[]{}, originalDrawable);
             }
-            return sld;
+            recyclerViewClasses.put(viewClass, result);
         }
-        return originalDrawable;
+        return result;
     }
 
     /**
-     * 删除View的指定图层
+     * 初始化RecyclerView
+     * <p>
+     * item 回收后再次添加（滚动复用、item动画）时会再次回调 onChildViewAdded，已初始化过的item直接跳过，避免重复叠加图层
      */
-    private static void deleteStateOfView(View view, int state) {
-        view.setBackground(deleteState(view.getBackground(), state));
-        if (view instanceof ImageView) {
-            ImageView img = (ImageView) view;
-            img.setImageDrawable(deleteState(img.getDrawable(), state));
-        }
+    private static void initRecyclerView(ViewGroup recyclerView, boolean forceUseFrame) {
+        setChildListener(recyclerView, ChildListener.TYPE_RECYCLER, forceUseFrame);
+        for (int i = 0; i < recyclerView.getChildCount(); i++)
+            initRecyclerItem(recyclerView.getChildAt(i), forceUseFrame);
     }
 
     /**
-     * 删除指定图层
+     * 初始化RecyclerView的item，复用的item直接跳过
      */
-    private static Drawable deleteState(Drawable drawable, int state) {
-        if (drawable instanceof StateListDrawable) {
-            StateListDrawable sld = (StateListDrawable) drawable;
-            try {
-                Class<? extends StateListDrawable> sldClass = sld.getClass();
-                int count = (int) sldClass.getMethod("getStateCount").invoke(sld);
-                Method mGetStateDrawable = sldClass.getMethod("getStateDrawable", int.class);
-                Method mGetStateSet = sldClass.getMethod("getStateSet", int.class);
-
-                ArrayList<int[]> stateSetList = new ArrayList();
-                ArrayList<Drawable> stateDrawableList = new ArrayList();
+    private static void initRecyclerItem(View item, boolean forceUseFrame) {
+        if (initializedItems.containsKey(item))
+            return;
+        initializedItems.put(item, Boolean.TRUE);
+        initView(item, forceUseFrame);
+    }
 
-//                log("删除前");
-                for (int i = 0; i < count; i++) {
-                    int[] stateSet = (int[]) mGetStateSet.invoke(sld, i);
-//                    log(Arrays.toString(stateSet));
-                    if (hasStateInSet(stateSet, state))
-                        continue;
-                    stateSetList.add(stateSet);
-                    stateDrawableList.add((Drawable) mGetStateDrawable.invoke(sld, i));
-                }
+    private static Field hierarchyListenerField;
+    private static boolean hierarchyListenerFieldResolved; // 是否已查找过 ViewGroup.mOnHierarchyChangeListener（无论成功与否，只查找一次）
 
-//                log("删除后");
-                if (stateSetList.size() < count) {
-                    sld = new StateListDrawable();
-                    for (int i = 0; i < stateSetList.size(); i++) {
-//                        log(Arrays.toString(stateSetList.get(i)));
-                        sld.addState(stateSetList.get(i), stateDrawableList.get(i));
-                    }
-                    return sld;
-                }
+    /**
+     * 获取ViewGroup当前的子View监听
+     *
+     * @return 无法获取时返回 null
+     */
+    private static ViewGroup.OnHierarchyChangeListener getHierarchyListener(ViewGroup viewGroup) {
+        if (!hierarchyListenerFieldResolved) {
+            hierarchyListenerFieldResolved = true;
+            try {
+                hierarchyListenerField = ViewGroup.class.getDeclaredField("mOnHierarchyChangeListener");
+                hierarchyListenerField.setAccessible(true);
             } catch (Exception e) {
                 e.printStackTrace();
                 log(e.getMessage());
+                hierarchyListenerField = null;
             }
         }
-        return drawable;
+        if (hierarchyListenerField == null)
+            return null;
+        try {
+            return (ViewGroup.OnHierarchyChangeListener) hierarchyListenerField.get(viewGroup);
+        } catch (Exception e) {
+            log(e.getMessage());
+            return null;
+        }
     }
 
-    private static Drawable frame; // 边框
+    /**
+     * 直接写入ViewGroup的子View监听字段
+     * <p>
+     * RadioGroup、TableLayout 等会重写 setOnHierarchyChangeListener()，把传入的监听包在内部的转发监听里，
+     * 经由该方法安装会形成 转发监听 → 本工具的监听 → 转发监听 的循环，所以只写字段，绕过子类的重写
+     *
+     * @return 无法写入字段时返回 false
+     */
+    private static boolean setHierarchyListener(ViewGroup viewGroup, ViewGroup.OnHierarchyChangeListener listener) {
+        getHierarchyListener(viewGroup); // 确保已查找字段
+        if (hierarchyListenerField == null)
+            return false;
+        try {
+            hierarchyListenerField.set(viewGroup, listener);
+            return true;
+        } catch (Exception e) {
+            log(e.getMessage());
+            return false;
+        }
+    }
 
     /**
-     * 获取边框Drawable
+     * 安装子View监听，应用原有的监听会被保留并继续回调
      */
-    private static Drawable getFrameDrawable() {
-        if (frame == null) {
-            GradientDrawable gradientDrawable = new GradientDrawable();
-            gradientDrawable.setStroke(3, Color.parseColor("#55ff55"));
-            frame = gradientDrawable;
+    private static void setChildListener(ViewGroup viewGroup, int type, boolean forceUseFrame) {
+        ViewGroup.OnHierarchyChangeListener current = getHierarchyListener(viewGroup);
+        if (current instanceof ChildListener) {
+            ChildListener childListener = (ChildListener) current;
+            if (childListener.type == type && childListener.forceUseFrame == forceUseFrame) // 已安装
+                return;
+            current = childListener.delegate;
         }
-        return frame;
+        if (!setHierarchyListener(viewGroup, ChildListener.obtain(type, forceUseFrame, current)))
+            viewGroup.setOnHierarchyChangeListener(ChildListener.obtain(type, forceUseFrame, null)); // 无法写字段时不转发，避免与子类的转发监听循环
     }
 
     /**
-     * 生成带边框的LayerDrawable
+     * 设置ViewGroup的子View监听，并保留本工具的监听
+     * <p>
+     * 已初始化的ViewGroup请用此方法代替 ViewGroup.setOnHierarchyChangeListener()，否则新添加的子View不会被初始化
      */
-    private static LayerDrawable generateFrameLayerDrawable(Context context, Drawable originalDrawable) {
-        return new LayerDrawable(new Drawable[]{originalDrawable, context.getResources().getDrawable(R.drawable.focused_frame)});
+    public static void setOnHierarchyChangeListener(ViewGroup viewGroup, ViewGroup.OnHierarchyChangeListener listener) {
+        if (viewGroup == null)
+            return;
+        ViewGroup.OnHierarchyChangeListener current = getHierarchyListener(viewGroup);
+        if (!(current instanceof ChildListener)) {
+            viewGroup.setOnHierarchyChangeListener(listener);
+            return;
+        }
+        ChildListener childListener = (ChildListener) current;
+        viewGroup.setOnHierarchyChangeListener(listener); // 交给ViewGroup自己处理，子类可能把它存入内部的转发监听
+        current = getHierarchyListener(viewGroup);
+        if (current instanceof ChildListener) // 子类没有替换字段，本工具的监听仍在
+            return;
+        if (!setHierarchyListener(viewGroup, ChildListener.obtain(childListener.type, childListener.forceUseFrame, current)))
+            viewGroup.setOnHierarchyChangeListener(ChildListener.obtain(childListener.type, childListener.forceUseFrame, null));
     }
 
     /**
-     * 是否有 指定的状态集合 在 状态集合列表 里
-     *
-     * @param stateSetList 状态集合列表
-     * @param stateSet     指定的状态集合
-     */
-    private static boolean hasStateSetInList(ArrayList<int[]> stateSetList, int[] stateSet) {
-        boolean hasStateSet = false;
-        Arrays.sort(stateSet);
-        for (int[] s : stateSetList) {
-            Arrays.sort(s);
-            if (Arrays.equals(stateSet, s)) {
-                hasStateSet = true;
-                break;
+     * 子View监听：初始化新添加的子View，并转发给应用原有的监听
+     * <p>
+     * 没有原有监听时，同类型的ViewGroup共用一个实例，不持有任何View
+     */
+    private static final class ChildListener implements ViewGroup.OnHierarchyChangeListener {
+        static final int TYPE_GROUP = 0; // 普通ViewGroup：初始化子View
+        static final int TYPE_LIST = 1; // AbsListView：给item添加selected图层
+        static final int TYPE_RECYCLER = 2; // RecyclerView：每个item只初始化一次
+
+        private static final ChildListener[] sharedListeners = new ChildListener[6];
+
+        final int type;
+        final boolean forceUseFrame;
+        final ViewGroup.OnHierarchyChangeListener delegate; // 应用原有的监听
+
+        private ChildListener(int type, boolean forceUseFrame, ViewGroup.OnHierarchyChangeListener delegate) {
+            this.type = type;
+            this.forceUseFrame = forceUseFrame;
+            this.delegate = delegate;
+        }
+
+        static ChildListener obtain(int type, boolean forceUseFrame, ViewGroup.OnHierarchyChangeListener delegate) {
+            if (delegate != null)
+                return new ChildListener(type, forceUseFrame, delegate);
+            int index = type * 2 + (forceUseFrame ? 1 : 0);
+            if (sharedListeners[index] == null)
+                sharedListeners[index] = new ChildListener(type, forceUseFrame, null);
+            return sharedListeners[index];
+        }
+
+        @Override
+        public void onChildViewAdded(View parent, View child) {
+            long start = beginDecorating(parent, "DirectionKeyUtil.onChildViewAdded");
+            try {
+                switch (type) {
+                    case TYPE_LIST:
+                        addSelectStateToView(child, forceUseFrame); // 给item添加selected图层
+                        break;
+                    case TYPE_RECYCLER:
+                        initRecyclerItem(child, forceUseFrame);
+                        break;
+                    default:
+                        if (!scheduleView(parent, child, forceUseFrame))
+                            initView(child, forceUseFrame); // 初始化子View
+                        break;
+                }
+            } finally {
+                endDecorating(start);
+            }
+            if (delegate != null)
+                delegate.onChildViewAdded(parent, child);
+        }
+
+        @Override
+        public void onChildViewRemoved(View parent, View child) {
+            if (focusSearch && type == TYPE_GROUP) // RecyclerView的item复用时不会再次初始化，保留登记，不可见时查找会跳过
+                unindexFocusables(parent, child);
+            if (delegate != null)
+                delegate.onChildViewRemoved(parent, child);
+        }
+    }
+
+    /**
+     * 是否需要focus状态，即可点击的View
+     */
+    private static boolean isFocusTarget(View view) {
+        return view.hasOnClickListeners() || view instanceof Button;
+    }
+
+    /**
+     * 窗口（或Fragment）根View的状态：延迟装饰的焦点监听、共用高亮框
+     * <p>
+     * 根View attach 时把监听安装到窗口的 ViewTreeObserver，detach 时移除，Activity 销毁时释放；
+     * 不持有根View，静态缓存不会导致窗口泄漏
+     */
+    private static final class WindowState implements View.OnAttachStateChangeListener {
+        final Metrics metrics = new Metrics();
+        String name; // 窗口名称，用于统计
+        private LazyFocusListener lazyFocusListener;
+        private FocusOverlay focusOverlay;
+        FocusIndex focusIndex;
+        private DecorationScheduler scheduler;
+        private boolean attached; // 监听是否已安装
+
+        WindowState(View root) {
+            root.addOnAttachStateChangeListener(this);
+        }
+
+        void setLazyFocusListener(View root, boolean forceUseFrame) {
+            if (lazyFocusListener != null)
+                return;
+            detach(root);
+            lazyFocusListener = new LazyFocusListener(forceUseFrame);
+            attach(root);
+        }
+
+        @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+        void setFocusOverlay(View root, long moveDuration) {
+            if (focusOverlay != null)
+                return;
+            detach(root);
+            focusOverlay = FocusOverlay.create((ViewGroup) root, moveDuration);
+            attach(root);
+        }
+
+        void setScheduler(View root, boolean forceUseFrame) {
+            if (scheduler != null)
+                return;
+            detach(root);
+            scheduler = new DecorationScheduler(root, forceUseFrame);
+            attach(root);
+        }
+
+        void setFocusIndex(View root) {
+            if (focusIndex == null)
+                focusIndex = new FocusIndex(root);
+        }
+
+        @Override
+        public void onViewAttachedToWindow(View v) {
+            attach(v);
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(View v) {
+            detach(v); // 回调时仍可获取窗口的 ViewTreeObserver
+        }
+
+        private void attach(View root) {
+            if (attached || root.getWindowToken() == null)
+                return;
+            attached = true;
+            ViewTreeObserver observer = root.getViewTreeObserver();
+            if (lazyFocusListener != null)
+                observer.addOnGlobalFocusChangeListener(lazyFocusListener);
+            if (focusOverlay != null) {
+                observer.addOnGlobalFocusChangeListener(focusOverlay);
+                observer.addOnPreDrawListener(focusOverlay);
+            }
+            if (scheduler != null)
+                observer.addOnGlobalFocusChangeListener(scheduler);
+        }
+
+        private void detach(View root) {
+            if (!attached)
+                return;
+            attached = false;
+            ViewTreeObserver observer = root.getViewTreeObserver();
+            if (!observer.isAlive())
+                return;
+            if (lazyFocusListener != null)
+                observer.removeOnGlobalFocusChangeListener(lazyFocusListener);
+            if (focusOverlay != null) {
+                observer.removeOnGlobalFocusChangeListener(focusOverlay);
+                observer.removeOnPreDrawListener(focusOverlay);
+            }
+            if (scheduler != null)
+                observer.removeOnGlobalFocusChangeListener(scheduler);
+        }
+
+        void release(View root) {
+            detach(root);
+            root.removeOnAttachStateChangeListener(this);
+            if (focusOverlay != null) {
+                focusOverlay.release((ViewGroup) root);
+                focusOverlay = null;
+            }
+            lazyFocusListener = null;
+            if (focusIndex != null) {
+                focusIndex.release();
+                focusIndex = null;
+            }
+            if (scheduler != null) {
+                scheduler.clear();
+                scheduler = null;
+            }
+        }
+    }
+
+    /**
+     * 装饰获取焦点的View，已装饰过的直接跳过
+     */
+    private static void decorateFocused(View newFocus, boolean forceUseFrame) {
+        long start = beginDecorating(newFocus, "DirectionKeyUtil.onGlobalFocusChanged");
+        try {
+            if (newFocus instanceof AbsListView) {
+                if (!initializedLists.containsKey(newFocus)) {
+                    initializedLists.put(newFocus, Boolean.TRUE);
+                    initListView((AbsListView) newFocus, forceUseFrame, true);
+                }
+            } else if (isFocusTarget(newFocus)) {
+                addFocusStateToView(newFocus, forceUseFrame); // 已装饰过的View会直接跳过
+            }
+        } finally {
+            endDecorating(start);
+        }
+    }
+
+    /**
+     * 延迟装饰模式的焦点监听：View 第一次获取焦点时才添加图层
+     */
+    private static final class LazyFocusListener implements ViewTreeObserver.OnGlobalFocusChangeListener {
+        private final boolean forceUseFrame;
+
+        LazyFocusListener(boolean forceUseFrame) {
+            this.forceUseFrame = forceUseFrame;
+        }
+
+        @Override
+        public void onGlobalFocusChanged(View oldFocus, View newFocus) {
+            if (newFocus != null)
+                decorateFocused(newFocus, forceUseFrame);
+        }
+    }
+
+    /**
+     * 窗口共用的高亮框：绘制在窗口根View的 ViewOverlay 上，跟随获取焦点的View（AbsListView 则跟随选中的item）移动
+     * <p>
+     * 只持有一个边框 Drawable，不修改各View的图层，View 再多内存也不增长
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static final class FocusOverlay implements ViewTreeObserver.OnGlobalFocusChangeListener, ViewTreeObserver.OnPreDrawListener, ValueAnimator.AnimatorUpdateListener {
+        private static final int[] FOCUSED_STATE = {android.R.attr.state_focused};
+
+        private final WeakReference<ViewGroup> rootRef; // 弱引用，避免静态缓存持有窗口
+        private final Drawable frame;
+        private final ValueAnimator animator;
+        private WeakReference<View> focusedRef;
+        private final Rect from = new Rect(); // 动画起点
+        private final Rect to = new Rect(); // 目标位置
+        private final Rect bounds = new Rect(); // 当前位置
+
+        private FocusOverlay(ViewGroup root, long moveDuration) {
+            rootRef = new WeakReference<>(root);
+            frame = getFrameDrawable(resolveFocusStyle(root)); // 共享边框的 ConstantState，只是各自的位置不同
+            frame.setState(FOCUSED_STATE); // 只跟随获取焦点的View，按获取焦点的状态着色
+            frame.setBounds(0, 0, 0, 0);
+            if (moveDuration > 0) {
+                animator = ValueAnimator.ofFloat(0f, 1f);
+                animator.setDuration(moveDuration);
+                animator.addUpdateListener(this);
+            } else {
+                animator = null;
+            }
+        }
+
+        static FocusOverlay create(ViewGroup root, long moveDuration) {
+            FocusOverlay focusOverlay = new FocusOverlay(root, moveDuration);
+            root.getOverlay().add(focusOverlay.frame);
+            return focusOverlay;
+        }
+
+        void release(ViewGroup root) {
+            if (animator != null)
+                animator.cancel();
+            root.getOverlay().remove(frame);
+            focusedRef = null;
+        }
+
+        @Override
+        public void onGlobalFocusChanged(View oldFocus, View newFocus) {
+            focusedRef = newFocus == null ? null : new WeakReference<>(newFocus);
+            if (animator != null && !bounds.isEmpty()) { // 从当前位置移动到新的View
+                from.set(bounds);
+                animator.cancel();
+                animator.start();
+            }
+            update();
+        }
+
+        @Override
+        public boolean onPreDraw() {
+            update(); // 滚动、布局变化后跟随View
+            return true;
+        }
+
+        @Override
+        public void onAnimationUpdate(ValueAnimator animation) {
+            update();
+        }
+
+        /**
+         * 计算并更新高亮框的位置
+         */
+        private void update() {
+            ViewGroup root = rootRef.get();
+            if (root == null)
+                return;
+            if (!getTargetRect(root, to)) {
+                to.setEmpty();
+                from.setEmpty();
+            }
+            if (animator != null && animator.isRunning() && !from.isEmpty() && !to.isEmpty()) {
+                float f = animator.getAnimatedFraction();
+                to.set(lerp(from.left, to.left, f), lerp(from.top, to.top, f), lerp(from.right, to.right, f), lerp(from.bottom, to.bottom, f));
+            }
+            if (!to.equals(bounds)) {
+                bounds.set(to);
+                frame.setBounds(bounds);
+                root.invalidate(); // 位置变化才重绘
+            }
+        }
+
+        /**
+         * 获取焦点View在根View坐标系中的位置
+         *
+         * @return 没有需要高亮的View时返回 false
+         */
+        private boolean getTargetRect(ViewGroup root, Rect out) {
+            View target = focusedRef == null ? null : focusedRef.get();
+            if (target instanceof AbsListView) // AbsListView获取焦点时，高亮选中的item
+                target = ((AbsListView) target).getSelectedView();
+            if (target == null || !target.isShown())
+                return false;
+            target.getDrawingRect(out);
+            try {
+                root.offsetDescendantRectToMyCoords(target, out);
+            } catch (IllegalArgumentException e) { // 已不在该窗口中
+                return false;
+            }
+            return true;
+        }
+
+        private static int lerp(int start, int end, float fraction) {
+            return start + Math.round((end - start) * fraction);
+        }
+    }
+
+    /**
+     * 分批初始化时，把新添加的子View放入所在窗口的队列
+     *
+     * @return 是否已放入队列，false 时须同步初始化
+     */
+    private static boolean scheduleView(View parent, View child, boolean forceUseFrame) {
+        if (!isBatchMode())
+            return false;
+        WindowState state = windowStates.get(parent.getRootView());
+        if (state == null || state.scheduler == null) // 尚未添加到窗口（如 Fragment 的View）
+            return false;
+        state.scheduler.add(child, forceUseFrame);
+        return true;
+    }
+
+    /**
+     * 分批初始化新添加的子树：每帧在时间预算内处理，用显式的栈遍历子树，超出预算时下一帧从中断处继续
+     * <p>
+     * 有新添加的子树或焦点变化后，在下一帧开始时排序一次：屏幕内的优先，其中离当前焦点近的优先，其余按添加顺序；
+     * 队列未处理完时，获取焦点的View立即装饰。队列只弱引用子树，正在处理的子树在处理完或窗口释放时清空
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static final class DecorationScheduler implements Choreographer.FrameCallback, ViewTreeObserver.OnGlobalFocusChangeListener {
+        private static final long OFF_SCREEN = Long.MAX_VALUE / 2; // 屏幕外的子树排在后面
+
+        /**
+         * 待处理的子树
+         */
+        private static final class Job {
+            final WeakReference<View> viewRef;
+            final boolean forceUseFrame;
+            long score; // 排序时计算，越小越优先
+
+            Job(View view, boolean forceUseFrame) {
+                this.viewRef = new WeakReference<>(view);
+                this.forceUseFrame = forceUseFrame;
+            }
+        }
+
+        private static final Comparator<Job> BY_SCORE = new Comparator<Job>() {
+            @Override
+            public int compare(Job a, Job b) {
+                return a.score < b.score ? -1 : a.score == b.score ? 0 : 1;
+            }
+        };
+
+        private final WeakReference<View> rootRef;
+        private final boolean forceUseFrame; // 焦点兜底装饰时使用
+        private final ArrayList<Job> pending = new ArrayList<>(); // 待处理的子树，head 之前的已取出
+        private int head;
+        private boolean reorder; // 有新添加的子树或焦点变化，下一帧开始时重新排序
+        private final ArrayList<View> stack = new ArrayList<>(); // 正在处理的子树中待初始化的View
+        private boolean currentForceUseFrame;
+        private boolean scheduled;
+        private final Rect focusRect = new Rect();
+        private final Rect rect = new Rect();
+
+        DecorationScheduler(View root, boolean forceUseFrame) {
+            this.rootRef = new WeakReference<>(root);
+            this.forceUseFrame = forceUseFrame;
+        }
+
+        void add(View view, boolean forceUseFrame) {
+            pending.add(new Job(view, forceUseFrame));
+            reorder = true;
+            schedule();
+        }
+
+        void clear() {
+            pending.clear();
+            head = 0;
+            stack.clear();
+            if (scheduled)
+                Choreographer.getInstance().removeFrameCallback(this);
+            scheduled = false;
+        }
+
+        private boolean hasPending() {
+            return head < pending.size() || !stack.isEmpty();
+        }
+
+        private void schedule() {
+            if (scheduled)
+                return;
+            scheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            scheduled = false;
+            View root = rootRef.get();
+            if (root == null) {
+                clear();
+                return;
+            }
+            long deadline = System.nanoTime() + batchFrameBudgetNanos;
+            long start = beginDecorating(root, "DirectionKeyUtil.batch");
+            try {
+                if (reorder)
+                    sortPending(root);
+                do {
+                    if (stack.isEmpty() && !pollNext())
+                        break;
+                    View view = stack.remove(stack.size() - 1);
+                    if (initSingleView(view, currentForceUseFrame)) {
+                        ViewGroup viewGroup = (ViewGroup) view;
+                        for (int i = viewGroup.getChildCount() - 1; i >= 0; i--)
+                            stack.add(viewGroup.getChildAt(i));
+                    }
+                } while (System.nanoTime() < deadline);
+            } finally {
+                endDecorating(start);
+            }
+            if (head > 0) { // 删除已取出的
+                pending.subList(0, head).clear();
+                head = 0;
+            }
+            if (hasPending())
+                schedule();
+        }
+
+        /**
+         * 按优先级排序未取出的子树，每帧最多一次：屏幕内的在前，其中离当前焦点近的在前，其余按添加顺序（排序是稳定的）。
+         * 已回收或已移除的子树直接删除
+         */
+        private void sortPending(View root) {
+            reorder = false;
+            View focused = root.findFocus();
+            boolean hasFocus = focused != null && focused.getGlobalVisibleRect(focusRect);
+            int size = head;
+            for (int i = head; i < pending.size(); i++) {
+                Job job = pending.get(i);
+                View view = job.viewRef.get();
+                if (view == null || view.getParent() == null)
+                    continue;
+                job.score = OFF_SCREEN;
+                if (view.isShown() && view.getGlobalVisibleRect(rect)) {
+                    long dx = hasFocus ? rect.centerX() - focusRect.centerX() : 0;
+                    long dy = hasFocus ? rect.centerY() - focusRect.centerY() : 0;
+                    job.score = dx * dx + dy * dy;
+                }
+                pending.set(size++, job);
+            }
+            pending.subList(size, pending.size()).clear();
+            Collections.sort(pending.subList(head, size), BY_SCORE);
+        }
+
+        /**
+         * 按排好的顺序取出下一个子树放入栈中，排序后添加的排在后面
+         *
+         * @return 队列是否还有子树
+         */
+        private boolean pollNext() {
+            while (head < pending.size()) {
+                Job job = pending.get(head++);
+                View view = job.viewRef.get();
+                if (view == null || view.getParent() == null) // 已回收或已移除
+                    continue;
+                stack.add(view);
+                currentForceUseFrame = job.forceUseFrame;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 兜底：队列未处理完时，立即装饰获取焦点的View
+         */
+        @Override
+        public void onGlobalFocusChanged(View oldFocus, View newFocus) {
+            if (newFocus == null || !hasPending())
+                return;
+            reorder = true; // 离新焦点近的优先
+            if (decorateOnInit())
+                decorateFocused(newFocus, forceUseFrame);
+        }
+    }
+
+    /**
+     * 登记可获取焦点的View到所在窗口的焦点索引
+     */
+    private static void indexFocusable(View view) {
+        FocusIndex index = Thread.currentThread() == decoratingThread ? currentFocusIndex : null;
+        if (index == null) { // 不在装饰过程中（如直接调用 initView）
+            WindowState state = windowStates.get(view.getRootView());
+            index = state == null ? null : state.focusIndex;
+        }
+        if (index != null)
+            index.add(view);
+    }
+
+    /**
+     * 子View被移除时，从焦点索引中删除它及其子View
+     */
+    private static void unindexFocusables(View parent, View child) {
+        WindowState state = windowStates.get(parent.getRootView());
+        if (state != null && state.focusIndex != null)
+            state.focusIndex.removeTree(child);
+    }
+
+    /**
+     * 给窗口安装按键分发的包装，使用焦点索引或合并长按重复事件时有效
+     */
+    private static void installKeyDispatcher(Window window) {
+        if (!focusSearch && !isKeyRepeatMode() || window == null)
+            return;
+        Window.Callback callback = window.getCallback();
+        if (callback == null || callback instanceof KeyDispatcher)
+            return;
+        window.setCallback(new KeyDispatcher(callback, window));
+    }
+
+    /**
+     * 是否合并长按方向键的重复事件
+     */
+    private static boolean isKeyRepeatMode() {
+        return keyRepeat && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+    }
+
+    /**
+     * 方向键对应的焦点方向，不是方向键时返回 0
+     */
+    private static int getFocusDirection(int keyCode) {
+        switch (keyCode) {
+            case KeyEvent.KEYCODE_DPAD_LEFT:
+                return View.FOCUS_LEFT;
+            case KeyEvent.KEYCODE_DPAD_RIGHT:
+                return View.FOCUS_RIGHT;
+            case KeyEvent.KEYCODE_DPAD_UP:
+                return View.FOCUS_UP;
+            case KeyEvent.KEYCODE_DPAD_DOWN:
+                return View.FOCUS_DOWN;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * 用窗口的焦点索引把焦点移到 direction 方向上的下一个View
+     * <p>
+     * 以下情况交给系统查找：焦点在未登记的View上（如 RecyclerView、AbsListView 等自行查找焦点的View中）、
+     * 焦点View指定了该方向的 nextFocusXxxId、下一个焦点在其他滚动容器中、已到滚动容器的边缘
+     *
+     * @return 是否已处理，false 时交给系统的 FocusFinder
+     */
+    private static boolean moveFocus(View root, int direction) {
+        WindowState state = root == null ? null : windowStates.get(root);
+        FocusIndex index = state == null ? null : state.focusIndex;
+        if (index == null)
+            return false;
+        View focused = root.findFocus();
+        if (focused == null || !index.contains(focused) || getNextFocusId(focused, direction) != View.NO_ID)
+            return false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+            Trace.beginSection("DirectionKeyUtil.focusSearch");
+        try {
+            FocusIndex.Entry next = index.findNext(focused, direction, focusSearchFallback == FALLBACK_WRAP);
+            if (next == FocusIndex.DEFER)
+                return false;
+            if (next == null) {
+                log("焦点索引中未找到下一个焦点，direction=" + direction);
+                return focusSearchFallback == FALLBACK_NONE;
+            }
+            View view = next.viewRef.get();
+            return view != null && view.requestFocus(direction); // 找到的View无法获得焦点时交给系统查找
+        } finally {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+                Trace.endSection();
+        }
+    }
+
+    /**
+     * View 在 xml 或代码中指定的 direction 方向上的下一个焦点，未指定时为 {@link View#NO_ID}
+     */
+    private static int getNextFocusId(View view, int direction) {
+        switch (direction) {
+            case View.FOCUS_LEFT:
+                return view.getNextFocusLeftId();
+            case View.FOCUS_RIGHT:
+                return view.getNextFocusRightId();
+            case View.FOCUS_UP:
+                return view.getNextFocusUpId();
+            case View.FOCUS_DOWN:
+                return view.getNextFocusDownId();
+            default:
+                return View.NO_ID;
+        }
+    }
+
+    private static final HashMap<Class<?>, Boolean> focusSearchClasses = new HashMap<>(); // 各View类是否重写了 focusSearch
+    private static final HashMap<Class<?>, Boolean> scrollContainerClasses = new HashMap<>(); // 各View类是否为滚动容器
+    private static final String[] SCROLL_CONTAINER_CLASS_NAMES = {"androidx.core.widget.NestedScrollView", "android.support.v4.widget.NestedScrollView",
+            "androidx.viewpager.widget.ViewPager", "android.support.v4.view.ViewPager"};
+
+    /**
+     * 是否自行查找焦点：AbsListView、RecyclerView（含 leanback 的 BaseGridView），及重写了 ViewGroup.focusSearch 的View
+     */
+    private static boolean overridesFocusSearch(View view) {
+        if (!(view instanceof ViewGroup))
+            return false;
+        if (view instanceof AbsListView || isRecyclerView(view))
+            return true;
+        Class<?> viewClass = view.getClass();
+        Boolean result = focusSearchClasses.get(viewClass);
+        if (result == null) {
+            try {
+                result = viewClass.getMethod("focusSearch", View.class, int.class).getDeclaringClass() != ViewGroup.class;
+            } catch (Exception e) {
+                e.printStackTrace();
+                result = false;
+            }
+            focusSearchClasses.put(viewClass, result);
+        }
+        return result;
+    }
+
+    /**
+     * 是否为滚动容器，按类名判断，不依赖support库
+     */
+    private static boolean isScrollContainer(View view) {
+        if (view instanceof ScrollView || view instanceof HorizontalScrollView)
+            return true;
+        if (!(view instanceof ViewGroup))
+            return false;
+        Class<?> viewClass = view.getClass();
+        Boolean result = scrollContainerClasses.get(viewClass);
+        if (result == null) {
+            result = false;
+            for (Class<?> c = viewClass; c != null && c != ViewGroup.class && !result; c = c.getSuperclass()) {
+                for (String name : SCROLL_CONTAINER_CLASS_NAMES) {
+                    if (name.equals(c.getName())) {
+                        result = true;
+                        break;
+                    }
+                }
+            }
+            scrollContainerClasses.put(viewClass, result);
+        }
+        return result;
+    }
+
+    /**
+     * 窗口内可获取焦点View的空间索引：按位置分到固定大小的网格中，查找时只检查焦点所在方向上邻近的格子，
+     * 候选的比较规则与系统的 FocusFinder 相同（同一行或列优先，其次按主方向距离加权）
+     * <p>
+     * 每个滚动容器（及窗口根View）各有一个网格，View 的位置相对所在容器的内容计算，容器滚动时不变，无需重新计算；
+     * 嵌套的滚动容器、自行查找焦点的View（如 RecyclerView）在上层网格中只登记一个占位，其中的View不与外面的比较。
+     * View 初始化时登记、从父View移除时删除；布局变化时只标记变化的子树，下次在该容器中查找时再重新计算这些View的位置。
+     * 只弱引用View，不影响回收
+     */
+    private static final class FocusIndex implements View.OnLayoutChangeListener {
+        private static final int CELL_SIZE_DP = 96; // 网格大小，接近常见卡片的尺寸
+        private static final int MAX_CELLS_PER_VIEW = 64; // 超大的View只登记在中心所在的格子
+        private static final int CELL_OFFSET = 0x8000; // 坐标为负的View，格子编号加上偏移
+
+        /**
+         * 查找结果：交给系统查找（下一个焦点在其他容器中，或已到容器边缘）
+         */
+        static final Entry DEFER = new Entry(null, null, false);
+
+        private final WeakReference<View> rootRef;
+        private final WeakHashMap<View, Entry> entries = new WeakHashMap<>(); // 登记的View，含容器的占位
+        private final WeakHashMap<View, Container> containers = new WeakHashMap<>(); // 各滚动容器的网格，含窗口根View
+        private final WeakHashMap<View, Boolean> watched = new WeakHashMap<>(); // 已监听布局变化的View
+        private final ArrayList<ArrayList<Entry>> recycledCells = new ArrayList<>();
+        private final int cellSize;
+        private final Rect wrapSource = new Rect();
+        private int stamp; // 每次查找递增，View可能登记在多个格子中，只计算一次
+
+        static final class Entry {
+            final WeakReference<View> viewRef;
+            final Container container; // 所在的容器
+            final boolean placeholder; // 是否为嵌套容器（或自行查找焦点的View）的占位
+            final Rect rect = new Rect(); // 相对所在容器内容的位置，为空表示当前不可获取焦点
+            int cellLeft, cellTop, cellRight, cellBottom; // 登记的格子范围
+            boolean inGrid;
+            boolean dirty; // 位置需要重新计算
+            boolean removed;
+            int stamp;
+
+            Entry(View view, Container container, boolean placeholder) {
+                viewRef = new WeakReference<>(view);
+                this.container = container;
+                this.placeholder = placeholder;
+            }
+        }
+
+        static final class Container {
+            final WeakReference<View> viewRef;
+            final boolean top; // 是否为窗口根View
+            final SparseArray<ArrayList<Entry>> cells = new SparseArray<>();
+            final ArrayList<Entry> dirtyEntries = new ArrayList<>();
+            int minCellX = Integer.MAX_VALUE, minCellY = Integer.MAX_VALUE, maxCellX = Integer.MIN_VALUE, maxCellY = Integer.MIN_VALUE; // 有View的格子范围，只扩大
+            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE; // 所有View的范围，绕回查找时使用
+
+            Container(View view, boolean top) {
+                viewRef = new WeakReference<>(view);
+                this.top = top;
+            }
+        }
+
+        FocusIndex(View root) {
+            rootRef = new WeakReference<>(root);
+            cellSize = Math.max(1, Math.round(CELL_SIZE_DP * root.getResources().getDisplayMetrics().density));
+        }
+
+        void add(View view) {
+            add(view, false);
+        }
+
+        /**
+         * 登记View：在其所有父View中找出所在的滚动容器；在自行查找焦点的父View中时，只登记最外层那个父View的占位
+         */
+        private void add(View view, boolean placeholder) {
+            if (entries.containsKey(view))
+                return;
+            View root = rootRef.get();
+            View containerView = null;
+            View owner = null; // 最外层自行查找焦点的父View
+            View last = view;
+            for (ViewParent parent = view.getParent(); parent instanceof View; parent = parent.getParent()) {
+                View v = (View) parent;
+                if (overridesFocusSearch(v)) {
+                    owner = v;
+                    containerView = null; // 容器须在 owner 之外
+                } else if (containerView == null && isScrollContainer(v)) {
+                    containerView = v;
+                }
+                last = v;
+            }
+            if (last != root) // 不在该窗口中
+                return;
+            if (containerView == null)
+                containerView = root;
+            if (owner != null) {
+                add(owner, true);
+                return;
+            }
+            Entry entry = new Entry(view, obtainContainer(containerView), placeholder);
+            entries.put(view, entry);
+            markDirty(entry);
+            watch(view, containerView);
+        }
+
+        private Container obtainContainer(View containerView) {
+            Container container = containers.get(containerView);
+            if (container == null) {
+                boolean top = containerView == rootRef.get();
+                container = new Container(containerView, top);
+                containers.put(containerView, container);
+                if (!top)
+                    add(containerView, true); // 在上层网格中登记占位
+            }
+            return container;
+        }
+
+        /**
+         * 监听 view 到所在容器之间各View的布局变化，已监听的父View以上已在之前监听
+         */
+        private void watch(View view, View containerView) {
+            for (View v = view; v != null && v != containerView && !watched.containsKey(v); ) {
+                v.addOnLayoutChangeListener(this);
+                watched.put(v, Boolean.TRUE);
+                ViewParent parent = v.getParent();
+                v = parent instanceof View ? (View) parent : null;
+            }
+        }
+
+        void removeTree(View view) {
+            Entry entry = entries.remove(view);
+            if (entry != null) {
+                entry.removed = true;
+                removeFromGrid(entry);
+            }
+            containers.remove(view);
+            if (watched.remove(view) != null)
+                view.removeOnLayoutChangeListener(this);
+            if (view instanceof ViewGroup) {
+                ViewGroup viewGroup = (ViewGroup) view;
+                for (int i = 0; i < viewGroup.getChildCount(); i++)
+                    removeTree(viewGroup.getChildAt(i));
+            }
+        }
+
+        /**
+         * 移除所有布局监听
+         */
+        void release() {
+            for (View view : watched.keySet())
+                view.removeOnLayoutChangeListener(this);
+            watched.clear();
+            entries.clear();
+            containers.clear();
+        }
+
+        boolean contains(View view) {
+            Entry entry = entries.get(view);
+            return entry != null && !entry.placeholder;
+        }
+
+        @Override
+        public void onLayoutChange(View v, int left, int top, int right, int bottom, int oldLeft, int oldTop, int oldRight, int oldBottom) {
+            if (left != oldLeft || top != oldTop || right != oldRight || bottom != oldBottom)
+                markTree(v);
+        }
+
+        /**
+         * 标记位置已变化的子树，嵌套容器内的View相对容器的位置不变，不再往下标记
+         */
+        private void markTree(View view) {
+            Entry entry = entries.get(view);
+            if (entry != null)
+                markDirty(entry);
+            if (!(view instanceof ViewGroup) || entry != null && entry.placeholder)
+                return;
+            ViewGroup viewGroup = (ViewGroup) view;
+            for (int i = 0; i < viewGroup.getChildCount(); i++)
+                markTree(viewGroup.getChildAt(i));
+        }
+
+        private static void markDirty(Entry entry) {
+            if (entry.dirty)
+                return;
+            entry.dirty = true;
+            entry.container.dirtyEntries.add(entry);
+        }
+
+        /**
+         * 查找 direction 方向上的下一个View
+         *
+         * @param wrap 该方向上没有View时，是否从同一行（列）的另一端查找，只在窗口根View的网格中有效
+         * @return 找到的View；{@link #DEFER} 表示交给系统查找；null 表示该方向上没有View
+         */
+        Entry findNext(View focused, int direction, boolean wrap) {
+            Entry source = entries.get(focused);
+            if (source == null || source.placeholder)
+                return DEFER;
+            Container container = source.container;
+            update(container);
+            if (source.rect.isEmpty())
+                return DEFER;
+            Entry next = search(container, source.rect, direction, source);
+            if (next == null && wrap && container.top)
+                next = search(container, getWrapSource(container, source.rect, direction), direction, source);
+            if (next == null)
+                return container.top ? null : DEFER; // 已到滚动容器边缘，由系统滚动或移出容器
+            return next.placeholder ? DEFER : next;
+        }
+
+        /**
+         * 重新计算容器中位置变化的View，并更新所在的格子
+         */
+        private void update(Container container) {
+            View containerView = container.viewRef.get();
+            ArrayList<Entry> dirtyEntries = container.dirtyEntries;
+            for (int i = 0; i < dirtyEntries.size(); i++) {
+                Entry entry = dirtyEntries.get(i);
+                entry.dirty = false;
+                if (entry.removed)
+                    continue;
+                removeFromGrid(entry);
+                View view = entry.viewRef.get();
+                Rect rect = entry.rect;
+                if (view == null || containerView == null || !locate((ViewGroup) containerView, view, rect)) {
+                    rect.setEmpty();
+                    continue;
+                }
+                addToGrid(container, entry);
+            }
+            dirtyEntries.clear();
+        }
+
+        private void addToGrid(Container container, Entry entry) {
+            Rect rect = entry.rect;
+            int left = toCell(rect.left), top = toCell(rect.top), right = toCell(rect.right - 1), bottom = toCell(rect.bottom - 1);
+            if ((right - left + 1) * (bottom - top + 1) > MAX_CELLS_PER_VIEW) {
+                left = right = toCell(rect.centerX());
+                top = bottom = toCell(rect.centerY());
+            }
+            for (int x = left; x <= right; x++) {
+                for (int y = top; y <= bottom; y++)
+                    obtainCell(container, x, y).add(entry);
+            }
+            entry.cellLeft = left;
+            entry.cellTop = top;
+            entry.cellRight = right;
+            entry.cellBottom = bottom;
+            entry.inGrid = true;
+            container.minCellX = Math.min(container.minCellX, left);
+            container.minCellY = Math.min(container.minCellY, top);
+            container.maxCellX = Math.max(container.maxCellX, right);
+            container.maxCellY = Math.max(container.maxCellY, bottom);
+            container.minX = Math.min(container.minX, rect.left);
+            container.minY = Math.min(container.minY, rect.top);
+            container.maxX = Math.max(container.maxX, rect.right);
+            container.maxY = Math.max(container.maxY, rect.bottom);
+        }
+
+        private void removeFromGrid(Entry entry) {
+            if (!entry.inGrid)
+                return;
+            SparseArray<ArrayList<Entry>> cells = entry.container.cells;
+            for (int x = entry.cellLeft; x <= entry.cellRight; x++) {
+                for (int y = entry.cellTop; y <= entry.cellBottom; y++) {
+                    int key = toKey(x, y);
+                    ArrayList<Entry> cell = cells.get(key);
+                    if (cell == null)
+                        continue;
+                    cell.remove(entry);
+                    if (cell.isEmpty()) {
+                        cells.remove(key);
+                        recycledCells.add(cell);
+                    }
+                }
+            }
+            entry.inGrid = false;
+        }
+
+        /**
+         * 计算View相对容器内容的位置（不含容器自身的滚动）
+         *
+         * @return 是否在该容器中
+         */
+        private static boolean locate(ViewGroup container, View view, Rect out) {
+            if (view.getWidth() == 0 || view.getHeight() == 0)
+                return false;
+            view.getDrawingRect(out);
+            try {
+                container.offsetDescendantRectToMyCoords(view, out);
+            } catch (IllegalArgumentException e) { // 已不在该容器中
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * View 当前是否可作为下一个焦点，占位只要求可见
+         */
+        private static boolean isAvailable(Entry entry) {
+            View view = entry.viewRef.get();
+            if (view == null || !view.isShown())
+                return false;
+            return entry.placeholder || view.isFocusable() && view.isEnabled();
+        }
+
+        /**
+         * 由近及远逐列（行）检查 direction 方向上的格子，越远检查的范围越宽。
+         * 找到同一行（列）的候选后再多检查一列（行）即停止；只找到其他行（列）的候选时，
+         * 之后只检查与 source 同一行（列）的格子，直到找到同一行（列）的候选或检查完所有格子。
+         * 扩展范围之外的格子中可能还有远离 source 所在行（列）的候选，都没找到时再检查其余所有格子
+         */
+        private Entry search(Container container, Rect source, int direction, Entry exclude) {
+            stamp++;
+            exclude.stamp = stamp;
+            int sourceX = toCell(source.centerX()), sourceY = toCell(source.centerY());
+            int steps, crossMin, crossMax; // 主方向上的列（行）数，垂直方向上的格子范围
+            boolean horizontal = direction == View.FOCUS_LEFT || direction == View.FOCUS_RIGHT;
+            switch (direction) {
+                case View.FOCUS_LEFT:
+                    steps = sourceX - container.minCellX;
+                    break;
+                case View.FOCUS_RIGHT:
+                    steps = container.maxCellX - sourceX;
+                    break;
+                case View.FOCUS_UP:
+                    steps = sourceY - container.minCellY;
+                    break;
+                default:
+                    steps = container.maxCellY - sourceY;
+                    break;
+            }
+            crossMin = horizontal ? container.minCellY - sourceY : container.minCellX - sourceX;
+            crossMax = horizontal ? container.maxCellY - sourceY : container.maxCellX - sourceX;
+            // source 所在行（列）覆盖的格子
+            int beamMin = horizontal ? toCell(source.top) - sourceY : toCell(source.left) - sourceX;
+            int beamMax = horizontal ? toCell(source.bottom - 1) - sourceY : toCell(source.right - 1) - sourceX;
+            int sign = direction == View.FOCUS_LEFT || direction == View.FOCUS_UP ? -1 : 1;
+
+            Entry best = null;
+            int foundStep = -1; // 第一次找到候选的列（行）
+            int beamStep = -1; // 第一次找到同一行（列）候选的列（行）
+            for (int step = 0; step <= steps && (beamStep < 0 || step <= beamStep + 1); step++) {
+                int spread = 2 * step + 1;
+                boolean beamOnly = foundStep >= 0 && step > foundStep + 1;
+                int from = beamOnly ? beamMin : Math.min(-spread, beamMin);
+                int to = beamOnly ? beamMax : Math.max(spread, beamMax);
+                for (int cross = Math.max(from, crossMin); cross <= Math.min(to, crossMax); cross++) {
+                    ArrayList<Entry> cell = horizontal
+                            ? container.cells.get(toKey(sourceX + sign * step, sourceY + cross))
+                            : container.cells.get(toKey(sourceX + cross, sourceY + sign * step));
+                    if (cell == null)
+                        continue;
+                    for (int i = 0; i < cell.size(); i++) {
+                        Entry entry = cell.get(i);
+                        if (entry.stamp == stamp)
+                            continue;
+                        entry.stamp = stamp;
+                        if (!isBetterCandidate(direction, source, entry.rect, best == null ? null : best.rect) || !isAvailable(entry))
+                            continue;
+                        best = entry;
+                        if (foundStep < 0)
+                            foundStep = step;
+                        if (beamStep < 0 && beamsOverlap(direction, source, entry.rect))
+                            beamStep = step;
+                    }
+                }
+            }
+            if (best == null)
+                best = searchRemaining(container, source, direction);
+            return best;
+        }
+
+        /**
+         * 检查容器中本次查找还未检查过的所有View
+         */
+        private Entry searchRemaining(Container container, Rect source, int direction) {
+            Entry best = null;
+            SparseArray<ArrayList<Entry>> cells = container.cells;
+            for (int i = 0; i < cells.size(); i++) {
+                ArrayList<Entry> cell = cells.valueAt(i);
+                for (int j = 0; j < cell.size(); j++) {
+                    Entry entry = cell.get(j);
+                    if (entry.stamp == stamp)
+                        continue;
+                    entry.stamp = stamp;
+                    if (isBetterCandidate(direction, source, entry.rect, best == null ? null : best.rect) && isAvailable(entry))
+                        best = entry;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * 绕回查找的起点：放在容器中所有View之外、与 direction 相反的一端
+         */
+        private Rect getWrapSource(Container container, Rect source, int direction) {
+            switch (direction) {
+                case View.FOCUS_LEFT:
+                    wrapSource.set(container.maxX, source.top, container.maxX + source.width(), source.bottom);
+                    break;
+                case View.FOCUS_RIGHT:
+                    wrapSource.set(container.minX - source.width(), source.top, container.minX, source.bottom);
+                    break;
+                case View.FOCUS_UP:
+                    wrapSource.set(source.left, container.maxY, source.right, container.maxY + source.height());
+                    break;
+                default:
+                    wrapSource.set(source.left, container.minY - source.height(), source.right, container.minY);
+                    break;
+            }
+            return wrapSource;
+        }
+
+        /**
+         * rect1 是否比 rect2 更适合作为下一个焦点，与 FocusFinder.isBetterCandidate 相同
+         *
+         * @param rect2 当前最佳的候选，null 表示还没有
+         */
+        private static boolean isBetterCandidate(int direction, Rect source, Rect rect1, Rect rect2) {
+            if (!isCandidate(source, rect1, direction))
+                return false;
+            if (rect2 == null)
+                return true;
+            if (beamBeats(direction, source, rect1, rect2))
+                return true;
+            if (beamBeats(direction, source, rect2, rect1))
+                return false;
+            return weightedDistance(direction, source, rect1) < weightedDistance(direction, source, rect2);
+        }
+
+        /**
+         * dest 是否在 source 的 direction 方向上，与 FocusFinder 相同
+         */
+        private static boolean isCandidate(Rect source, Rect dest, int direction) {
+            switch (direction) {
+                case View.FOCUS_LEFT:
+                    return (source.right > dest.right || source.left >= dest.right) && source.left > dest.left;
+                case View.FOCUS_RIGHT:
+                    return (source.left < dest.left || source.right <= dest.left) && source.right < dest.right;
+                case View.FOCUS_UP:
+                    return (source.bottom > dest.bottom || source.top >= dest.bottom) && source.top > dest.top;
+                default:
+                    return (source.top < dest.top || source.bottom <= dest.top) && source.bottom < dest.bottom;
+            }
+        }
+
+        /**
+         * 同一行（列）的 rect1 是否胜过不在同一行（列）的 rect2：左右移动时总是胜过，
+         * 上下移动时 rect1 须比 rect2 的远边更近，与 FocusFinder 相同
+         */
+        private static boolean beamBeats(int direction, Rect source, Rect rect1, Rect rect2) {
+            if (!beamsOverlap(direction, source, rect1) || beamsOverlap(direction, source, rect2))
+                return false;
+            if (!isToDirectionOf(direction, source, rect2))
+                return true;
+            if (direction == View.FOCUS_LEFT || direction == View.FOCUS_RIGHT)
+                return true;
+            return majorAxisDistance(direction, source, rect1) < majorAxisDistanceToFarEdge(direction, source, rect2);
+        }
+
+        /**
+         * dest 与 source 是否在同一行（左右移动）或同一列（上下移动）
+         */
+        private static boolean beamsOverlap(int direction, Rect source, Rect dest) {
+            if (direction == View.FOCUS_LEFT || direction == View.FOCUS_RIGHT)
+                return dest.bottom > source.top && dest.top < source.bottom;
+            return dest.right > source.left && dest.left < source.right;
+        }
+
+        /**
+         * dest 是否完全在 source 的 direction 方向上
+         */
+        private static boolean isToDirectionOf(int direction, Rect source, Rect dest) {
+            switch (direction) {
+                case View.FOCUS_LEFT:
+                    return source.left >= dest.right;
+                case View.FOCUS_RIGHT:
+                    return source.right <= dest.left;
+                case View.FOCUS_UP:
+                    return source.top >= dest.bottom;
+                default:
+                    return source.bottom <= dest.top;
+            }
+        }
+
+        private static long majorAxisDistance(int direction, Rect source, Rect dest) {
+            switch (direction) {
+                case View.FOCUS_LEFT:
+                    return Math.max(0, source.left - dest.right);
+                case View.FOCUS_RIGHT:
+                    return Math.max(0, dest.left - source.right);
+                case View.FOCUS_UP:
+                    return Math.max(0, source.top - dest.bottom);
+                default:
+                    return Math.max(0, dest.top - source.bottom);
+            }
+        }
+
+        private static long majorAxisDistanceToFarEdge(int direction, Rect source, Rect dest) {
+            switch (direction) {
+                case View.FOCUS_LEFT:
+                    return Math.max(1, source.left - dest.left);
+                case View.FOCUS_RIGHT:
+                    return Math.max(1, dest.right - source.right);
+                case View.FOCUS_UP:
+                    return Math.max(1, source.top - dest.top);
+                default:
+                    return Math.max(1, dest.bottom - source.bottom);
+            }
+        }
+
+        /**
+         * 13 * 主方向距离² + 垂直方向中心距离²，越小越近
+         */
+        private static long weightedDistance(int direction, Rect source, Rect dest) {
+            long major = majorAxisDistance(direction, source, dest);
+            long minor = direction == View.FOCUS_LEFT || direction == View.FOCUS_RIGHT
+                    ? source.centerY() - dest.centerY()
+                    : source.centerX() - dest.centerX();
+            return 13 * major * major + minor * minor;
+        }
+
+        private int toCell(int coordinate) {
+            return (int) Math.floor((double) coordinate / cellSize);
+        }
+
+        private static int toKey(int cellX, int cellY) {
+            return ((cellX + CELL_OFFSET) & 0xFFFF) << 16 | ((cellY + CELL_OFFSET) & 0xFFFF);
+        }
+
+        private ArrayList<Entry> obtainCell(Container container, int cellX, int cellY) {
+            int key = toKey(cellX, cellY);
+            ArrayList<Entry> cell = container.cells.get(key);
+            if (cell == null) {
+                cell = recycledCells.isEmpty() ? new ArrayList<Entry>() : recycledCells.remove(recycledCells.size() - 1);
+                container.cells.put(key, cell);
+            }
+            return cell;
+        }
+    }
+
+    /**
+     * 窗口 Window.Callback 的包装：方向键先按原流程分发，View 未处理时用焦点索引查找下一个焦点；
+     * 长按方向键的重复事件交给 {@link KeyRepeater} 逐帧处理；其余调用直接转发
+     */
+    private static final class KeyDispatcher implements Window.Callback {
+        final Window.Callback delegate;
+        private final Window window;
+        private final KeyRepeater repeater;
+
+        KeyDispatcher(Window.Callback delegate, Window window) {
+            this.delegate = delegate;
+            this.window = window;
+            this.repeater = isKeyRepeatMode() ? new KeyRepeater(this) : null;
+        }
+
+        @Override
+        public boolean dispatchKeyEvent(KeyEvent event) {
+            int direction = getFocusDirection(event.getKeyCode());
+            if (repeater != null && repeater.onKeyEvent(event, direction))
+                return true;
+            if (delegate.dispatchKeyEvent(event))
+                return true;
+            if (event.getAction() != KeyEvent.ACTION_DOWN || !event.hasNoModifiers())
+                return false;
+            return direction != 0 && focusSearch && moveFocus(window.peekDecorView(), direction);
+        }
+
+        /**
+         * 按一次方向键：先按原流程分发，View 未处理时移动焦点，与系统处理方向键的流程相同
+         *
+         * @return 是否已处理
+         */
+        boolean step(KeyEvent event, int direction) {
+            if (delegate.dispatchKeyEvent(event))
+                return true;
+            View root = window.peekDecorView();
+            if (root == null)
+                return false;
+            if (focusSearch && moveFocus(root, direction))
+                return true;
+            View focused = root.findFocus();
+            View next = focused == null ? null : focused.focusSearch(direction);
+            return next != null && next != focused && next.requestFocus(direction);
+        }
+
+        @Override
+        public boolean dispatchKeyShortcutEvent(KeyEvent event) {
+            return delegate.dispatchKeyShortcutEvent(event);
+        }
+
+        @Override
+        public boolean dispatchTouchEvent(MotionEvent event) {
+            return delegate.dispatchTouchEvent(event);
+        }
+
+        @Override
+        public boolean dispatchTrackballEvent(MotionEvent event) {
+            return delegate.dispatchTrackballEvent(event);
+        }
+
+        @Override
+        public boolean dispatchGenericMotionEvent(MotionEvent event) {
+            return delegate.dispatchGenericMotionEvent(event);
+        }
+
+        @Override
+        public boolean dispatchPopulateAccessibilityEvent(AccessibilityEvent event) {
+            return delegate.dispatchPopulateAccessibilityEvent(event);
+        }
+
+        @Override
+        public View onCreatePanelView(int featureId) {
+            return delegate.onCreatePanelView(featureId);
+        }
+
+        @Override
+        public boolean onCreatePanelMenu(int featureId, Menu menu) {
+            return delegate.onCreatePanelMenu(featureId, menu);
+        }
+
+        @Override
+        public boolean onPreparePanel(int featureId, View view, Menu menu) {
+            return delegate.onPreparePanel(featureId, view, menu);
+        }
+
+        @Override
+        public boolean onMenuOpened(int featureId, Menu menu) {
+            return delegate.onMenuOpened(featureId, menu);
+        }
+
+        @Override
+        public boolean onMenuItemSelected(int featureId, MenuItem item) {
+            return delegate.onMenuItemSelected(featureId, item);
+        }
+
+        @Override
+        public void onWindowAttributesChanged(WindowManager.LayoutParams attrs) {
+            delegate.onWindowAttributesChanged(attrs);
+        }
+
+        @Override
+        public void onContentChanged() {
+            delegate.onContentChanged();
+        }
+
+        @Override
+        public void onWindowFocusChanged(boolean hasFocus) {
+            if (!hasFocus && repeater != null)
+                repeater.stop();
+            delegate.onWindowFocusChanged(hasFocus);
+        }
+
+        @Override
+        public void onAttachedToWindow() {
+            delegate.onAttachedToWindow();
+        }
+
+        @Override
+        public void onDetachedFromWindow() {
+            if (repeater != null)
+                repeater.stop();
+            delegate.onDetachedFromWindow();
+        }
+
+        @Override
+        public void onPanelClosed(int featureId, Menu menu) {
+            delegate.onPanelClosed(featureId, menu);
+        }
+
+        @Override
+        public boolean onSearchRequested() {
+            return delegate.onSearchRequested();
+        }
+
+        @TargetApi(Build.VERSION_CODES.M)
+        @Override
+        public boolean onSearchRequested(SearchEvent searchEvent) {
+            return delegate.onSearchRequested(searchEvent);
+        }
+
+        @Override
+        public ActionMode onWindowStartingActionMode(ActionMode.Callback callback) {
+            return delegate.onWindowStartingActionMode(callback);
+        }
+
+        @TargetApi(Build.VERSION_CODES.M)
+        @Override
+        public ActionMode onWindowStartingActionMode(ActionMode.Callback callback, int type) {
+            return delegate.onWindowStartingActionMode(callback, type);
+        }
+
+        @Override
+        public void onActionModeStarted(ActionMode mode) {
+            delegate.onActionModeStarted(mode);
+        }
+
+        @Override
+        public void onActionModeFinished(ActionMode mode) {
+            delegate.onActionModeFinished(mode);
+        }
+
+        @TargetApi(Build.VERSION_CODES.N)
+        @Override
+        public void onProvideKeyboardShortcuts(List<KeyboardShortcutGroup> data, Menu menu, int deviceId) {
+            delegate.onProvideKeyboardShortcuts(data, menu, deviceId);
+        }
+
+        @TargetApi(Build.VERSION_CODES.O)
+        @Override
+        public void onPointerCaptureChanged(boolean hasCapture) {
+            delegate.onPointerCaptureChanged(hasCapture);
+        }
+    }
+
+    /**
+     * 长按方向键：吞掉系统的重复事件，改为每帧按当前速率移动焦点，松开按键时停止
+     * <p>
+     * 每一步构造一个重复按键事件交给 {@link KeyDispatcher#step(KeyEvent, int)}，自定义了按键处理的View仍能收到；
+     * 走到边缘（无法再移动）时停止逐帧回调，但继续吞掉重复事件直到松开
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static final class KeyRepeater implements Choreographer.FrameCallback {
+        static final int MAX_STEPS_PER_FRAME = 3;
+
+        private final KeyDispatcher dispatcher;
+        private KeyEvent downEvent; // 正在长按的按键，null 表示未长按
+        private int direction;
+        private int repeatCount;
+        private long startNanos, lastFrameNanos;
+        private float pendingSteps; // 累计未移动的步数
+        private boolean running; // 是否已安排逐帧回调
+
+        KeyRepeater(KeyDispatcher dispatcher) {
+            this.dispatcher = dispatcher;
+        }
+
+        /**
+         * @return 是否吞掉该事件
+         */
+        boolean onKeyEvent(KeyEvent event, int direction) {
+            if (direction == 0 || event.getAction() != KeyEvent.ACTION_DOWN || event.getRepeatCount() == 0 || event.isCanceled()) {
+                stop(); // 松开、其他按键或新的按下，交给原流程
+                return false;
+            }
+            if (downEvent == null || downEvent.getKeyCode() != event.getKeyCode()) {
+                stop();
+                downEvent = event;
+                this.direction = direction;
+                repeatCount = event.getRepeatCount();
+                startNanos = lastFrameNanos = 0;
+                running = true;
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+            return true;
+        }
+
+        void stop() {
+            if (running)
+                Choreographer.getInstance().removeFrameCallback(this);
+            running = false;
+            downEvent = null;
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!running)
+                return;
+            if (startNanos == 0) { // 第一帧立即移动一步
+                startNanos = lastFrameNanos = frameTimeNanos;
+                pendingSteps = 1;
+            } else {
+                float fraction = keyRepeatAccelerationMillis <= 0 ? 1 : Math.min(1f, (frameTimeNanos - startNanos) / 1000000f / keyRepeatAccelerationMillis);
+                float rate = keyRepeatInitialRate + (keyRepeatMaxRate - keyRepeatInitialRate) * fraction;
+                pendingSteps += rate * (frameTimeNanos - lastFrameNanos) / 1000000000f;
+                lastFrameNanos = frameTimeNanos;
+            }
+            int steps = Math.min((int) pendingSteps, MAX_STEPS_PER_FRAME);
+            pendingSteps -= (int) pendingSteps; // 超出的步数丢弃，不追赶
+            if (steps > 0) {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+                    Trace.beginSection("DirectionKeyUtil.keyRepeat");
+                try {
+                    for (int i = 0; i < steps; i++) {
+                        KeyEvent event = KeyEvent.changeTimeRepeat(downEvent, SystemClock.uptimeMillis(), ++repeatCount);
+                        if (!dispatcher.step(event, direction)) {
+                            log("长按移动到边缘，direction=" + direction);
+                            running = false;
+                            return;
+                        }
+                        if (!running) // 分发过程中窗口失去焦点
+                            return;
+                    }
+                } finally {
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+                        Trace.endSection();
+                }
+            }
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * 添加focused图层给View
+     *
+     * @param deleteOriginalFocusStateDrawable 是否删除原focused图层
+     */
+    private static void addFocusStateToView(View view, boolean deleteOriginalFocusStateDrawable) {
+        addStateToView(view, android.R.attr.state_focused, deleteOriginalFocusStateDrawable, true);
+    }
+
+    /**
+     * 添加selected图层给View
+     *
+     * @param deleteOriginalSelectStateDrawable 是否删除原selected图层
+     */
+    private static void addSelectStateToView(View view, boolean deleteOriginalSelectStateDrawable) {
+        addStateToView(view, android.R.attr.state_selected, deleteOriginalSelectStateDrawable, false);
+    }
+
+    /**
+     * 添加指定状态图层给View
+     *
+     * @param targetState                       指定状态
+     * @param deleteOriginalTargetStateDrawable 是否删除原有重复状态的图层
+     * @param setFocusable                      是否设置 setFocusable(true)
+     */
+    private static void addStateToView(View view, int targetState, boolean deleteOriginalTargetStateDrawable, boolean setFocusable) {
+        FocusStyle style = resolveFocusStyle(view);
+        Decoration decoration = decorations.get(view);
+        if (decoration != null) {
+            if (decoration.isIntact(view, targetState, style)) // 已装饰过，重复初始化直接跳过
+                return;
+            decoration.restore(view); // 图层已被替换，先还原仍是装饰图层的部分，再重新装饰
+        }
+        decoration = new Decoration(view, targetState, style);
+
+        if (setFocusable)
+            view.setFocusable(true);
+        if (deleteOriginalTargetStateDrawable)
+            deleteStateOfView(view, targetState);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) // 6.0以上版本，可以setForeground，但对Button无效
+            if (view instanceof Button)
+                addStateToBg(view, targetState, false, style);
+            else
+                view.setForeground(generateDrawable(view.getContext(), view.getForeground(), targetState, false, style));
+        else {
+            if (view instanceof ImageView) // 若是ImageView，则添加至Image
+                addStateToImg((ImageView) view, targetState, false, style);
+            else
+                addStateToBg(view, targetState, false, style);
+        }
+
+        decoration.recordApplied(view);
+        decorations.put(view, decoration);
+        Metrics metrics = metrics();
+        if (metrics != null)
+            metrics.decoratedViews++;
+    }
+
+    /**
+     * 还原该view及其所有子view：恢复初始化前的图层、focusable 状态与子View监听
+     * <p>
+     * 初始化后又被替换的图层保持不变
+     */
+    public static void restoreView(View view) {
+        if (view == null)
+            return;
+        Decoration decoration = decorations.remove(view);
+        if (decoration != null)
+            decoration.restore(view);
+        initializedItems.remove(view);
+        initializedLists.remove(view);
+        if (view instanceof ViewGroup) {
+            ViewGroup viewGroup = (ViewGroup) view;
+            ViewGroup.OnHierarchyChangeListener listener = getHierarchyListener(viewGroup);
+            if (listener instanceof ChildListener) // 恢复应用原有的子View监听
+                setHierarchyListener(viewGroup, ((ChildListener) listener).delegate);
+            for (int i = 0; i < viewGroup.getChildCount(); i++)
+                restoreView(viewGroup.getChildAt(i));
+        }
+    }
+
+    /**
+     * View 的装饰记录：装饰前后的图层与 focusable 状态，用于避免重复装饰及还原
+     */
+    private static final class Decoration {
+        private final int targetState;
+        private final FocusStyle style;
+        private final int originalFocusable; // 8.0以上版本为 View.getFocusable()，以下为 1（可获取焦点）或 0
+        private final Drawable originalBackground;
+        private final Drawable originalForeground;
+        private final Drawable originalImage;
+        private Drawable background;
+        private Drawable foreground;
+        private Drawable image;
+
+        Decoration(View view, int targetState, FocusStyle style) {
+            this.targetState = targetState;
+            this.style = style;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)
+                originalFocusable = view.getFocusable();
+            else
+                originalFocusable = view.isFocusable() ? 1 : 0;
+            originalBackground = view.getBackground();
+            originalForeground = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? view.getForeground() : null;
+            originalImage = view instanceof ImageView ? ((ImageView) view).getDrawable() : null;
+        }
+
+        /**
+         * 记录装饰后的图层
+         */
+        void recordApplied(View view) {
+            background = view.getBackground();
+            foreground = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? view.getForeground() : null;
+            image = view instanceof ImageView ? ((ImageView) view).getDrawable() : null;
+        }
+
+        /**
+         * 装饰是否仍然有效：状态、样式相同，且图层未被替换
+         */
+        boolean isIntact(View view, int targetState, FocusStyle style) {
+            return this.targetState == targetState
+                    && this.style.equals(style)
+                    && view.getBackground() == background
+                    && (Build.VERSION.SDK_INT < Build.VERSION_CODES.M || view.getForeground() == foreground)
+                    && (!(view instanceof ImageView) || ((ImageView) view).getDrawable() == image);
+        }
+
+        /**
+         * 还原仍是装饰图层的部分，及 focusable 状态
+         */
+        void restore(View view) {
+            if (view.getBackground() == background && background != originalBackground)
+                view.setBackground(originalBackground);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && view.getForeground() == foreground && foreground != originalForeground)
+                view.setForeground(originalForeground);
+            if (view instanceof ImageView) {
+                ImageView imageView = (ImageView) view;
+                if (imageView.getDrawable() == image && image != originalImage)
+                    imageView.setImageDrawable(originalImage);
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)
+                view.setFocusable(originalFocusable);
+            else
+                view.setFocusable(originalFocusable != 0);
+        }
+    }
+
+    private static void addStateToImg(ImageView imageView, int targetState, boolean deleteOriginalTargetStateDrawable, FocusStyle style) {
+        imageView.setImageDrawable(generateDrawable(imageView.getContext(), imageView.getDrawable(), targetState, deleteOriginalTargetStateDrawable, style));
+    }
+
+    private static void addStateToBg(View view, int targetState, boolean deleteOriginalTargetStateDrawable, FocusStyle style) {
+        view.setBackground(generateDrawable(view.getContext(), view.getBackground(), targetState, deleteOriginalTargetStateDrawable, style));
+    }
+
+    /**
+     * 生成带有指定状态图层的Drawable
+     * <p>
+     * 相同的原图层、指定状态、删除标记、高亮框样式只生成一次，之后从缓存的 ConstantState 克隆
+     *
+     * @param originalDrawable                  原先的 Drawable
+     * @param targetState                       指定的状态
+     * @param deleteOriginalTargetStateDrawable 是否删除原有重复状态的图层
+     * @param style                             高亮框样式
+     */
+    private static Drawable generateDrawable(Context context, Drawable originalDrawable, int targetState, boolean deleteOriginalTargetStateDrawable, FocusStyle style) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+            Trace.beginSection("DirectionKeyUtil.generateDrawable");
+        long start = System.nanoTime();
+        try {
+            return generateDrawableInternal(context, originalDrawable, targetState, deleteOriginalTargetStateDrawable, style);
+        } finally {
+            Metrics metrics = metrics();
+            if (metrics != null)
+                metrics.generateDrawableNanos += System.nanoTime() - start;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+                Trace.endSection();
+        }
+    }
+
+    private static Drawable generateDrawableInternal(Context context, Drawable originalDrawable, int targetState, boolean deleteOriginalTargetStateDrawable, FocusStyle style) {
+        StateEntries entries = null;
+        if (originalDrawable instanceof StateListDrawable) { // StateListDrawable 即 drawable-selector 资源文件生成的类
+            entries = readStateEntries((StateListDrawable) originalDrawable);
+            if (entries == null) // 读取图层失败，保持原样
+                return originalDrawable;
+        }
+        StateKey key = StateKey.of(originalDrawable, entries, targetState, deleteOriginalTargetStateDrawable ? StateKey.OP_REPLACE : StateKey.OP_ADD, style);
+        Drawable cached = obtainCachedDrawable(context, key, originalDrawable);
+        if (cached != null)
+            return cached;
+
+        Drawable result;
+        if (entries != null) {
+            int count = entries.stateSets.length;
+            // 原StateListDrawable中需要使用的图层
+            int[][] stateSets = new int[count][];
+            Drawable[] stateDrawables = new Drawable[count];
+            int size = 0;
+            // 需要添加的图层
+            int[][] newStateSets = new int[count][];
+            Drawable[] newStateDrawables = new Drawable[count];
+            int newSize = 0;
+
+            // 取出原来的图层
+            for (int i = 0; i < count; i++) {
+                int[] stateSet = entries.stateSets[i];
+                if (deleteOriginalTargetStateDrawable && hasStateInSet(stateSet, targetState)) // 若要删除重复状态图层，则不取出使用
+                    continue;
+                stateSets[size] = stateSet;
+                stateDrawables[size] = entries.drawables[i];
+                size++;
+            }
+
+            // 生成新的图层
+            for (int i = 0; i < size; i++) {
+                int[] stateSet = stateSets[i];
+                if (!hasStateInSet(stateSet, targetState)) {
+                    int[] targetStateSet = new int[stateSet.length + 1];
+                    System.arraycopy(stateSet, 0, targetStateSet, 0, stateSet.length);
+                    targetStateSet[targetStateSet.length - 1] = targetState;
+                    if (!hasStateSetInList(stateSets, size, targetStateSet)) {
+                        newStateSets[newSize] = targetStateSet;
+                        newStateDrawables[newSize] = generateFrameLayerDrawable(context, stateDrawables[i], style);
+                        newSize++;
+                    }
+                }
+            }
+
+            // 组装图层
+            if (newSize > 0) {
+                StateListDrawable sld = new StateListDrawable();
+                for (int i = 0; i < newSize; i++)
+                    sld.addState(newStateSets[i], newStateDrawables[i]);
+                for (int i = 0; i < size; i++)
+                    sld.addState(stateSets[i].clone(), stateDrawables[i]); // 复制一份，避免缓存强引用原状态集合
+                result = sld;
+            } else {
+                result = null; // 无需修改
+            }
+        } else { // 非drawable-selector资源文件生成的Drawable
+            StateListDrawable sld = new StateListDrawable();
+            if (originalDrawable == null) {
+                sld.addState(new int[]{targetState}, getFrameDrawable(style));
+            } else {
+                sld.addState(new int[]{targetState}, generateFrameLayerDrawable(context, originalDrawable, style));
+                sld.addState(new int[]{}, originalDrawable);
+            }
+            result = sld;
+        }
+        return cacheDrawable(context, key, originalDrawable, result);
+    }
+
+    /**
+     * 删除View的指定图层
+     */
+    private static void deleteStateOfView(View view, int state) {
+        view.setBackground(deleteState(view.getContext(), view.getBackground(), state));
+        if (view instanceof ImageView) {
+            ImageView img = (ImageView) view;
+            img.setImageDrawable(deleteState(img.getContext(), img.getDrawable(), state));
+        }
+    }
+
+    /**
+     * 删除指定图层
+     */
+    private static Drawable deleteState(Context context, Drawable drawable, int state) {
+        if (!(drawable instanceof StateListDrawable))
+            return drawable;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+            Trace.beginSection("DirectionKeyUtil.deleteState");
+        long start = System.nanoTime();
+        try {
+            return deleteStateInternal(context, drawable, state);
+        } finally {
+            Metrics metrics = metrics();
+            if (metrics != null)
+                metrics.deleteStateNanos += System.nanoTime() - start;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+                Trace.endSection();
+        }
+    }
+
+    private static Drawable deleteStateInternal(Context context, Drawable drawable, int state) {
+        StateEntries entries = readStateEntries((StateListDrawable) drawable);
+        if (entries == null)
+            return drawable;
+        StateKey key = StateKey.of(drawable, entries, state, StateKey.OP_DELETE, null);
+        Drawable cached = obtainCachedDrawable(context, key, drawable);
+        if (cached != null)
+            return cached;
+
+        int count = entries.stateSets.length;
+        int deleted = 0;
+        for (int i = 0; i < count; i++) {
+            if (hasStateInSet(entries.stateSets[i], state))
+                deleted++;
+        }
+        StateListDrawable sld = null;
+        if (deleted > 0) {
+            sld = new StateListDrawable();
+            for (int i = 0; i < count; i++) {
+                int[] stateSet = entries.stateSets[i];
+                if (!hasStateInSet(stateSet, state))
+                    sld.addState(stateSet.clone(), entries.drawables[i]);
+            }
+        }
+        return cacheDrawable(context, key, drawable, sld);
+    }
+
+    /**
+     * StateListDrawable 的全部图层
+     */
+    private static final class StateEntries {
+        final int[][] stateSets;
+        final Drawable[] drawables;
+
+        StateEntries(int count) {
+            stateSets = new int[count][];
+            drawables = new Drawable[count];
+        }
+    }
+
+    private static Method mGetStateCount;
+    private static Method mGetStateSet;
+    private static Method mGetStateDrawable;
+    private static boolean stateMethodsResolved; // 是否已查找过隐藏方法（无论成功与否，只查找一次）
+
+    /**
+     * 读取 StateListDrawable 的全部图层
+     * <p>
+     * 10.0以上版本，getStateCount/getStateSet/getStateDrawable 为公开方法，直接调用；
+     * 以下版本为隐藏方法，只反射查找一次
+     *
+     * @return 读取失败时返回 null
+     */
+    private static StateEntries readStateEntries(StateListDrawable sld) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            int count = sld.getStateCount();
+            StateEntries entries = new StateEntries(count);
+            for (int i = 0; i < count; i++) {
+                entries.stateSets[i] = sld.getStateSet(i);
+                entries.drawables[i] = sld.getStateDrawable(i);
+            }
+            return entries;
+        }
+        if (!resolveStateMethods())
+            return null;
+        try {
+            int count = (int) mGetStateCount.invoke(sld);
+            StateEntries entries = new StateEntries(count);
+            for (int i = 0; i < count; i++) {
+                entries.stateSets[i] = (int[]) mGetStateSet.invoke(sld, i);
+                entries.drawables[i] = (Drawable) mGetStateDrawable.invoke(sld, i);
+            }
+            Metrics metrics = metrics();
+            if (metrics != null)
+                metrics.reflectionCalls += 1 + count * 2;
+            return entries;
+        } catch (Exception e) {
+            e.printStackTrace();
+            log(e.getMessage());
+            return null;
+        }
+    }
+
+    private static synchronized boolean resolveStateMethods() {
+        if (!stateMethodsResolved) {
+            stateMethodsResolved = true;
+            try {
+                mGetStateCount = StateListDrawable.class.getMethod("getStateCount");
+                mGetStateSet = StateListDrawable.class.getMethod("getStateSet", int.class);
+                mGetStateDrawable = StateListDrawable.class.getMethod("getStateDrawable", int.class);
+            } catch (Exception e) {
+                e.printStackTrace();
+                log(e.getMessage());
+                mGetStateCount = null;
+            }
+        }
+        return mGetStateCount != null && mGetStateSet != null && mGetStateDrawable != null;
+    }
+
+    /**
+     * 图层缓存的键：原图层（各状态集合及其图层的 ConstantState）+ 指定状态 + 操作
+     * <p>
+     * 同一资源生成的 StateListDrawable 各自持有新的 ConstantState，但共享状态集合数组与子图层的 ConstantState，
+     * 所以不能直接以原图层的 ConstantState 为键
+     */
+    private static final class StateKey {
+        static final int OP_ADD = 0; // 添加指定状态图层
+        static final int OP_REPLACE = 1; // 删除原有指定状态图层后再添加
+        static final int OP_DELETE = 2; // 仅删除指定状态图层
+
+        private final Object[] parts;
+        private final int targetState;
+        private final int op;
+        private final FocusStyle style; // 删除图层时为 null
+        private final int hash;
+
+        private StateKey(Object[] parts, int targetState, int op, FocusStyle style) {
+            this.parts = parts;
+            this.targetState = targetState;
+            this.op = op;
+            this.style = style;
+            this.hash = 31 * (31 * (31 * Arrays.hashCode(parts) + targetState) + op) + (style == null ? 0 : style.hashCode());
+        }
+
+        /**
+         * 非 selector 的原图层只缓存纯色、形状与 .9 图：它们通常来自资源，同一资源的实例共享 ConstantState；
+         * 其余图层（如海报等 BitmapDrawable）的 ConstantState 各实例独有，作为键及缓存的图层会一直持有原图，不缓存
+         *
+         * @return 原图层无法克隆或不宜缓存时返回 null，即不缓存
+         */
+        static StateKey of(Drawable drawable, StateEntries entries, int targetState, int op, FocusStyle style) {
+            Object[] parts;
+            if (entries != null) {
+                int count = entries.stateSets.length;
+                parts = new Object[count * 2];
+                for (int i = 0; i < count; i++) {
+                    Drawable child = entries.drawables[i];
+                    Drawable.ConstantState cs = child == null ? null : child.getConstantState();
+                    if (child != null && cs == null)
+                        return null;
+                    parts[i * 2] = entries.stateSets[i];
+                    parts[i * 2 + 1] = cs;
+                }
+            } else if (drawable != null) {
+                if (!(drawable instanceof ColorDrawable || drawable instanceof GradientDrawable || drawable instanceof NinePatchDrawable))
+                    return null;
+                Drawable.ConstantState cs = drawable.getConstantState();
+                if (cs == null)
+                    return null;
+                parts = new Object[]{cs};
+            } else {
+                parts = new Object[0];
+            }
+            return new StateKey(parts, targetState, op, style);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof StateKey))
+                return false;
+            StateKey other = (StateKey) o;
+            return hash == other.hash && targetState == other.targetState && op == other.op
+                    && (style == null ? other.style == null : style.equals(other.style)) && Arrays.equals(parts, other.parts);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final int STATE_CACHE_SIZE = 128;
+
+    /**
+     * 表示“无需修改，沿用原图层”的缓存值
+     */
+    private static final Drawable.ConstantState UNCHANGED = new Drawable.ConstantState() {
+        @Override
+        public Drawable newDrawable() {
+            return null;
+        }
+
+        @Override
+        public int getChangingConfigurations() {
+            return 0;
+        }
+    };
+
+    private static final LinkedHashMap<StateKey, Drawable.ConstantState> stateCache = new LinkedHashMap<StateKey, Drawable.ConstantState>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<StateKey, Drawable.ConstantState> eldest) {
+            return size() > STATE_CACHE_SIZE;
+        }
+    };
+
+    /**
+     * 从缓存克隆图层
+     *
+     * @return 未命中时返回 null
+     */
+    private static Drawable obtainCachedDrawable(Context context, StateKey key, Drawable originalDrawable) {
+        Metrics metrics = metrics();
+        if (key == null) {
+            if (metrics != null)
+                metrics.cacheMisses++;
+            return null;
+        }
+        Drawable.ConstantState cs;
+        synchronized (stateCache) {
+            cs = stateCache.get(key);
+        }
+        if (metrics != null) {
+            if (cs == null)
+                metrics.cacheMisses++;
+            else
+                metrics.cacheHits++;
+        }
+        if (cs == null)
+            return null;
+        if (cs == UNCHANGED)
+            return originalDrawable;
+        return cs.newDrawable(context.getResources());
+    }
+
+    /**
+     * 缓存新生成的图层，并返回供 View 使用的克隆
+     *
+     * @param result 新生成的图层，null 表示无需修改
+     */
+    private static Drawable cacheDrawable(Context context, StateKey key, Drawable originalDrawable, Drawable result) {
+        if (key == null)
+            return result == null ? originalDrawable : result;
+        if (result == null) {
+            synchronized (stateCache) {
+                stateCache.put(key, UNCHANGED);
+            }
+            return originalDrawable;
+        }
+        Drawable.ConstantState cs = result.getConstantState();
+        if (cs == null) // 含有无法克隆的图层，不缓存
+            return result;
+        synchronized (stateCache) {
+            stateCache.put(key, cs);
+        }
+        return cs.newDrawable(context.getResources()); // 新生成的图层只作为原型，View 使用其克隆
+    }
+
+    /**
+     * 高亮框样式：边框宽度、颜色、圆角、内缩与缩放，创建后不可变
+     * <p>
+     * 相同样式的高亮框共用一个 {@link Drawable.ConstantState}，各View的高亮框只在绘制时按各自的位置计算。
+     * 给每个View添加图层时，边框超出View的部分会被裁剪（向外扩展的内缩、大于 1 的缩放），
+     * 需要画在View之外时请使用共用高亮框 {@link DirectionKeyUtil#setOverlayMode(boolean, long)}
+     */
+    public static final class FocusStyle {
+        /**
+         * 默认样式：有原图层时叠加应用的 R.drawable.focused_frame，无原图层及共用高亮框时为 3px、#55ff55 的直角边框
+         */
+        public static final FocusStyle DEFAULT = new FocusStyle(3, 0xff55ff55, 0, 0, 1f, null, true);
+
+        final float strokeWidth;
+        final int color;
+        final float cornerRadius;
+        final float inset;
+        final float scale;
+        final ColorStateList tint; // 边框的着色，null 表示只用 color
+        final boolean frameResource; // 有原图层时是否叠加 R.drawable.focused_frame
+
+        /**
+         * @param strokeWidth  边框宽度（像素）
+         * @param color        边框颜色
+         * @param cornerRadius 圆角半径（像素），0 表示直角
+         * @param inset        边框向内缩进的距离（像素），负数表示向外扩展（超出View的部分只在共用高亮框时可见）
+         * @param scale        以中心缩放边框的比例，1 表示与View同样大小（大于 1 时同上）
+         */
+        public FocusStyle(float strokeWidth, int color, float cornerRadius, float inset, float scale) {
+            this(strokeWidth, color, cornerRadius, inset, scale, null, false);
+        }
+
+        /**
+         * 按View的状态着色的边框，只着色边框，不影响View原有的图层
+         *
+         * @param tint 边框的着色，按View的状态（如 按下+获取焦点）取色，未匹配的状态使用 color；
+         *             只按实例比较，相同着色的样式应共用同一个 ColorStateList
+         */
+        public FocusStyle(float strokeWidth, int color, float cornerRadius, float inset, float scale, ColorStateList tint) {
+            this(strokeWidth, color, cornerRadius, inset, scale, tint, false);
+        }
+
+        private FocusStyle(float strokeWidth, int color, float cornerRadius, float inset, float scale, ColorStateList tint, boolean frameResource) {
+            this.strokeWidth = strokeWidth;
+            this.color = color;
+            this.cornerRadius = cornerRadius;
+            this.inset = inset;
+            this.scale = scale;
+            this.tint = tint;
+            this.frameResource = frameResource;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof FocusStyle))
+                return false;
+            FocusStyle other = (FocusStyle) o;
+            return color == other.color && tint == other.tint && frameResource == other.frameResource
+                    && Float.compare(strokeWidth, other.strokeWidth) == 0
+                    && Float.compare(cornerRadius, other.cornerRadius) == 0
+                    && Float.compare(inset, other.inset) == 0
+                    && Float.compare(scale, other.scale) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Float.floatToIntBits(strokeWidth);
+            result = 31 * result + color;
+            result = 31 * result + Float.floatToIntBits(cornerRadius);
+            result = 31 * result + Float.floatToIntBits(inset);
+            result = 31 * result + Float.floatToIntBits(scale);
+            result = 31 * result + System.identityHashCode(tint);
+            return 31 * result + (frameResource ? 1 : 0);
+        }
+    }
+
+    private static final HashMap<FocusStyle, FocusFrameDrawable.FrameState> frameStates = new HashMap<>(); // 各样式共用的 ConstantState
+
+    /**
+     * 获取边框Drawable，相同样式共用同一个 ConstantState
+     */
+    private static Drawable getFrameDrawable(FocusStyle style) {
+        FocusFrameDrawable.FrameState state;
+        synchronized (frameStates) {
+            state = frameStates.get(style);
+            if (state == null) {
+                state = new FocusFrameDrawable.FrameState(style);
+                frameStates.put(style, state);
+            }
+        }
+        return state.newDrawable();
+    }
+
+    private static Drawable.ConstantState frameResourceState; // R.drawable.focused_frame 共用的 ConstantState
+
+    /**
+     * 生成带边框的LayerDrawable，默认样式叠加 R.drawable.focused_frame，只加载一次
+     */
+    private static LayerDrawable generateFrameLayerDrawable(Context context, Drawable originalDrawable, FocusStyle style) {
+        Drawable frame;
+        if (style.frameResource) {
+            Resources res = context.getResources();
+            Drawable.ConstantState cs = frameResourceState;
+            if (cs == null) {
+                frame = res.getDrawable(R.drawable.focused_frame);
+                frameResourceState = frame.getConstantState();
+            } else {
+                frame = cs.newDrawable(res);
+            }
+        } else {
+            frame = getFrameDrawable(style);
+        }
+        return new LayerDrawable(new Drawable[]{originalDrawable, frame});
+    }
+
+    /**
+     * 高亮框：按样式在当前的位置绘制边框
+     * <p>
+     * 样式放在共用的 ConstantState 中；画笔、绘制区域与着色属于各实例。
+     * 颜色优先取实例的着色，其次取样式的着色，都没有时使用样式的颜色
+     */
+    private static final class FocusFrameDrawable extends Drawable {
+        private final FrameState state;
+        private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        private final RectF rect = new RectF();
+        private ColorStateList tint;
+        private int alpha = 255;
+
+        private FocusFrameDrawable(FrameState state) {
+            this.state = state;
+            paint.setStyle(Paint.Style.STROKE);
+            paint.setStrokeWidth(state.style.strokeWidth);
+            updateColor();
+        }
+
+        @Override
+        public void draw(Canvas canvas) {
+            FocusStyle style = state.style;
+            rect.set(getBounds());
+            float inset = style.inset + style.strokeWidth / 2; // 边框画在区域内
+            rect.inset(inset, inset);
+            int count = canvas.save();
+            if (style.scale != 1f)
+                canvas.scale(style.scale, style.scale, rect.centerX(), rect.centerY());
+            if (style.cornerRadius > 0)
+                canvas.drawRoundRect(rect, style.cornerRadius, style.cornerRadius, paint);
+            else
+                canvas.drawRect(rect, paint);
+            canvas.restoreToCount(count);
+        }
+
+        @Override
+        public void setTintList(ColorStateList tint) {
+            this.tint = tint;
+            if (updateColor())
+                invalidateSelf();
+        }
+
+        @Override
+        public boolean isStateful() {
+            ColorStateList tint = getTint();
+            return tint != null && tint.isStateful();
+        }
+
+        private ColorStateList getTint() {
+            return tint != null ? tint : state.style.tint;
+        }
+
+        @Override
+        protected boolean onStateChange(int[] stateSet) {
+            return updateColor();
+        }
+
+        /**
+         * 按着色、透明度更新画笔颜色
+         *
+         * @return 颜色是否改变
+         */
+        private boolean updateColor() {
+            ColorStateList tint = getTint();
+            int color = tint == null ? state.style.color : tint.getColorForState(getState(), state.style.color);
+            color = (color & 0xffffff) | ((color >>> 24) * alpha / 255) << 24;
+            if (paint.getColor() == color)
+                return false;
+            paint.setColor(color);
+            return true;
+        }
+
+        @Override
+        public void setAlpha(int alpha) {
+            this.alpha = alpha;
+            if (updateColor())
+                invalidateSelf();
+        }
+
+        @Override
+        public int getAlpha() {
+            return alpha;
+        }
+
+        @Override
+        public void setColorFilter(ColorFilter colorFilter) {
+            paint.setColorFilter(colorFilter);
+            invalidateSelf();
+        }
+
+        @Override
+        public int getOpacity() {
+            return PixelFormat.TRANSLUCENT;
+        }
+
+        @Override
+        public ConstantState getConstantState() {
+            return state;
+        }
+
+        /**
+         * 共用的状态只有不可变的样式，无需复制
+         */
+        @Override
+        public Drawable mutate() {
+            return this;
+        }
+
+        static final class FrameState extends ConstantState {
+            final FocusStyle style;
+
+            FrameState(FocusStyle style) {
+                this.style = style;
+            }
+
+            @Override
+            public Drawable newDrawable() {
+                return new FocusFrameDrawable(this);
+            }
+
+            @Override
+            public int getChangingConfigurations() {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 是否有 指定的状态集合 在 状态集合列表 里
+     *
+     * @param stateSets 状态集合列表
+     * @param size      状态集合列表的有效长度
+     * @param stateSet  指定的状态集合
+     */
+    private static boolean hasStateSetInList(int[][] stateSets, int size, int[] stateSet) {
+        for (int i = 0; i < size; i++) {
+            int[] s = stateSets[i];
+            if (s.length != stateSet.length)
+                continue;
+            boolean same = true;
+            for (int state : stateSet) { // 状态集合内无重复状态，逐个包含即相等，不排序以免改动原状态集合
+                if (!hasStateInSet(s, state)) {
+                    same = false;
+                    break;
+                }
             }
+            if (same)
+                return true;
         }
-        return hasStateSet;
+        return false;
     }
 
     /**
@@ -1,26 +1,53 @@
 package com.example.myapplication;
 
-import android.graphics.Color;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Annotation;
+import android.text.Layout;
+import android.text.PrecomputedText;
 import android.text.SpannableString;
 import android.text.Spanned;
 import android.text.TextPaint;
-import android.text.method.LinkMovementMethod;
 import android.text.style.ClickableSpan;
+import android.util.LruCache;
+import android.util.SparseArray;
+import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.TextView;
 
+import androidx.annotation.ColorInt;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.StringRes;
 
 import com.blankj.utilcode.util.ColorUtils;
 import com.blankj.utilcode.util.StringUtils;
-import com.blankj.utilcode.util.TimeUtils;
 import com.blankj.utilcode.util.Utils;
 import com.dianyi.jihuibao.R;
 
+import java.lang.ref.WeakReference;
 import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * 国际化工具
@@ -30,6 +57,53 @@ public class InternationalUtil {
      * 时间相关
      */
     public static class Time {
+
+        private static final ThreadLocal<Formatters> formatters = new ThreadLocal<Formatters>() {
+            @Override
+            protected Formatters initialValue() {
+                return new Formatters();
+            }
+        };
+        private static volatile int generation; // 语言、时区变化时递增，各线程的格式化器随之重建
+        private static volatile boolean receiverRegistered;
+
+        private static final long SECOND = 1000;
+        private static final long MINUTE = 60 * SECOND;
+        private static final long HOUR = 60 * MINUTE;
+        private static final long DAY = 24 * HOUR;
+        private static final int MEMO_SIZE = 256; // 格式化结果缓存的槽数，2的幂
+
+        /**
+         * 每个线程各自的格式化器（SimpleDateFormat 非线程安全），按当前语言、时区创建
+         * <p>
+         * 格式化结果按（时间样式，时间段）缓存：时间样式只精确到分钟时，同一分钟内的时间戳格式化结果相同，直接返回缓存的字符串；
+         * 缓存为固定大小的数组，冲突时直接覆盖，不分配内存
+         */
+        private static final class Formatters {
+            int generation = -1;
+            Locale locale;
+            TimeZone timeZone;
+            final SparseArray<PattenFormat> patterns = new SparseArray<>(); // key：时间样式的字符串资源ID
+            final SparseArray<PattenFormat> styles = new SparseArray<>(); // key：DateFormat 的样式
+            final Date date = new Date(); // 格式化时复用
+            final int[] memoKeys = new int[MEMO_SIZE]; // 时间样式的资源ID 或 DateFormat 的样式
+            final long[] memoBuckets = new long[MEMO_SIZE]; // 时间段序号
+            final String[] memoValues = new String[MEMO_SIZE];
+        }
+
+        /**
+         * 格式化器及其精度
+         */
+        private static final class PattenFormat {
+            final DateFormat format;
+            final long granularity; // 格式化结果相同的时间段长度（毫秒），1 表示不缓存结果
+
+            PattenFormat(DateFormat format, long granularity) {
+                this.format = format;
+                this.granularity = granularity;
+            }
+        }
+
         /**
          * 获取时间
          *
@@ -38,7 +112,8 @@ public class InternationalUtil {
          * @return 时间字符串
          */
         public static String getTimeByPatten(long time, @StringRes int patten) {
-            return TimeUtils.millis2String(time, Utils.getApp().getString(patten));
+            Formatters formatters = obtainFormatters();
+            return format(formatters, patten, obtainPattenFormat(formatters, patten), time);
         }
 
         /**
@@ -49,7 +124,177 @@ public class InternationalUtil {
          * @return 时间字符串
          */
         public static String getTimeByStyle(long time, int style) {
-            return DateFormat.getDateInstance(style).format(new Date(time));
+            Formatters formatters = obtainFormatters();
+            PattenFormat format = formatters.styles.get(style);
+            if (format == null) {
+                format = new PattenFormat(DateFormat.getDateInstance(style, formatters.locale), DAY); // 只有日期
+                formatters.styles.put(style, format);
+            }
+            return format(formatters, style, format, time);
+        }
+
+        /**
+         * 获取相对时间：今天、昨天、更早的时间分别使用不同的时间样式，如“今天 14:05”、“昨天 14:05”、“2019-03-08”
+         *
+         * @param time            时间戳
+         * @param todayPatten     今天的时间样式，如 "'今天' HH:mm"
+         * @param yesterdayPatten 昨天的时间样式
+         * @param otherPatten     更早（或明天以后）的时间样式
+         * @return 时间字符串
+         */
+        public static String getRelativeTime(long time, @StringRes int todayPatten, @StringRes int yesterdayPatten, @StringRes int otherPatten) {
+            Formatters formatters = obtainFormatters();
+            long today = getDay(formatters, System.currentTimeMillis());
+            return getRelativeTime(formatters, time, today, todayPatten, yesterdayPatten, otherPatten);
+        }
+
+        /**
+         * 批量获取相对时间，用于列表绑定：结果写入传入的数组，缓存命中时不分配内存
+         *
+         * @param times           时间戳
+         * @param out             结果，长度不足时只处理前 out.length 个
+         * @param todayPatten     今天的时间样式
+         * @param yesterdayPatten 昨天的时间样式
+         * @param otherPatten     更早（或明天以后）的时间样式
+         */
+        public static void getRelativeTimes(@NonNull long[] times, @NonNull String[] out, @StringRes int todayPatten, @StringRes int yesterdayPatten, @StringRes int otherPatten) {
+            Formatters formatters = obtainFormatters();
+            long today = getDay(formatters, System.currentTimeMillis());
+            int count = Math.min(times.length, out.length);
+            for (int i = 0; i < count; i++)
+                out[i] = getRelativeTime(formatters, times[i], today, todayPatten, yesterdayPatten, otherPatten);
+        }
+
+        private static String getRelativeTime(Formatters formatters, long time, long today, int todayPatten, int yesterdayPatten, int otherPatten) {
+            long day = getDay(formatters, time);
+            int patten = day == today ? todayPatten : day == today - 1 ? yesterdayPatten : otherPatten;
+            return format(formatters, patten, obtainPattenFormat(formatters, patten), time);
+        }
+
+        /**
+         * 当地日期的序号（自 1970-01-01 起的天数）
+         */
+        private static long getDay(Formatters formatters, long time) {
+            return floorDiv(time + formatters.timeZone.getOffset(time), DAY);
+        }
+
+        private static PattenFormat obtainPattenFormat(Formatters formatters, int patten) {
+            PattenFormat format = formatters.patterns.get(patten);
+            if (format == null) {
+                String pattern = Utils.getApp().getString(patten);
+                format = new PattenFormat(new SimpleDateFormat(pattern, formatters.locale), getGranularity(pattern));
+                formatters.patterns.put(patten, format);
+            }
+            return format;
+        }
+
+        /**
+         * 格式化，同一时间段内的结果直接从缓存返回
+         *
+         * @param key 时间样式的资源ID 或 DateFormat 的样式
+         */
+        private static String format(Formatters formatters, int key, PattenFormat format, long time) {
+            if (format.granularity <= 1) {
+                formatters.date.setTime(time);
+                return format.format.format(formatters.date);
+            }
+            long bucket = floorDiv(time + formatters.timeZone.getOffset(time), format.granularity);
+            int hash = (int) (bucket ^ (bucket >>> 32)) * 0x9E3779B9 + key;
+            int slot = (hash ^ (hash >>> 16)) & (MEMO_SIZE - 1);
+            String value = formatters.memoValues[slot];
+            if (value != null && formatters.memoBuckets[slot] == bucket && formatters.memoKeys[slot] == key)
+                return value;
+            formatters.date.setTime(time);
+            value = format.format.format(formatters.date);
+            formatters.memoKeys[slot] = key;
+            formatters.memoBuckets[slot] = bucket;
+            formatters.memoValues[slot] = value;
+            return value;
+        }
+
+        /**
+         * 时间样式的精度：样式中最小的时间单位，引号内的文字不计；含毫秒时不缓存
+         */
+        private static long getGranularity(String pattern) {
+            long granularity = DAY;
+            boolean quoted = false;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '\'') {
+                    quoted = !quoted;
+                    continue;
+                }
+                if (quoted)
+                    continue;
+                switch (c) {
+                    case 'S':
+                        return 1;
+                    case 's':
+                        granularity = Math.min(granularity, SECOND);
+                        break;
+                    case 'm':
+                        granularity = Math.min(granularity, MINUTE);
+                        break;
+                    case 'H':
+                    case 'h':
+                    case 'k':
+                    case 'K':
+                    case 'a':
+                        granularity = Math.min(granularity, HOUR);
+                        break;
+                    default: // 日期、星期、时区等，一天内不变
+                        break;
+                }
+            }
+            return granularity;
+        }
+
+        private static long floorDiv(long x, long y) {
+            long r = x / y;
+            if ((x % y != 0) && ((x ^ y) < 0))
+                r--;
+            return r;
+        }
+
+        /**
+         * 清空缓存的格式化器，应用内切换语言或时区后调用；系统语言、时区变化时自动清空
+         */
+        public static synchronized void invalidate() {
+            generation++;
+        }
+
+        /**
+         * 获取当前线程的格式化器，语言、时区变化后重建
+         */
+        private static Formatters obtainFormatters() {
+            if (!receiverRegistered)
+                registerReceiver();
+            Formatters formatters = Time.formatters.get();
+            Locale locale = Locale.getDefault();
+            if (formatters.generation != generation || formatters.locale != locale) {
+                formatters.generation = generation;
+                formatters.locale = locale;
+                formatters.timeZone = TimeZone.getDefault();
+                formatters.patterns.clear();
+                formatters.styles.clear();
+                Arrays.fill(formatters.memoValues, null);
+            }
+            return formatters;
+        }
+
+        private static synchronized void registerReceiver() {
+            if (receiverRegistered)
+                return;
+            receiverRegistered = true;
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+            Utils.getApp().registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    invalidate();
+                }
+            }, filter);
         }
     }
 
@@ -80,26 +325,371 @@ public class InternationalUtil {
          */
         public static SpannableString getHighlightText(@NonNull String allText, @NonNull String highlightText, @Nullable View.OnClickListener onClickListener) {
             SpannableString spannableString = new SpannableString(allText);
-            int start = allText.indexOf(highlightText);
+            int start = highlightText.isEmpty() ? -1 : allText.indexOf(highlightText);
+            if (start < 0) // 未找到加亮文本
+                return spannableString;
             int end = start + highlightText.length();
-            spannableString.setSpan(new ClickableSpan() {
-                @Override
-                public void updateDrawState(@NonNull TextPaint ds) {
-                    super.updateDrawState(ds);
-                    ds.setColor(ColorUtils.getColor(R.color.ff576b95));
-                    ds.setUnderlineText(false);
+            spannableString.setSpan(new HighlightSpan(HighlightStyle.getDefault(), onClickListener), start, end, Spanned.SPAN_INCLUSIVE_EXCLUSIVE);
+            return spannableString;
+        }
+
+        /**
+         * 获取加亮富文本，加亮全部关键词的所有位置
+         * <p>
+         * 关键词固定时（如列表中的搜索结果）应创建一个 {@link Highlighter} 复用
+         *
+         * @param allText         全部文本
+         * @param keywords        关键词
+         * @param ignoreCase      是否忽略大小写
+         * @param onClickListener 加亮文本的点击事件
+         * @return SpannableString
+         */
+        public static SpannableString getHighlightText(@NonNull CharSequence allText, @NonNull Collection<String> keywords, boolean ignoreCase, @Nullable View.OnClickListener onClickListener) {
+            return new Highlighter(keywords, ignoreCase).highlight(allText, HighlightStyle.getDefault(), onClickListener);
+        }
+
+        /**
+         * 加亮样式，不可变，可在多个文本、多个线程间共用；颜色在创建时确定，绘制时不再读取资源
+         */
+        public static final class HighlightStyle {
+            private static HighlightStyle defaultStyle;
+
+            @ColorInt
+            final int color;
+            final boolean underline;
+
+            public HighlightStyle(@ColorInt int color, boolean underline) {
+                this.color = color;
+                this.underline = underline;
+            }
+
+            /**
+             * 默认样式：R.color.ff576b95，无下划线
+             */
+            public static HighlightStyle getDefault() {
+                HighlightStyle style = defaultStyle;
+                if (style == null)
+                    defaultStyle = style = new HighlightStyle(ColorUtils.getColor(R.color.ff576b95), false);
+                return style;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o)
+                    return true;
+                if (!(o instanceof HighlightStyle))
+                    return false;
+                HighlightStyle other = (HighlightStyle) o;
+                return color == other.color && underline == other.underline;
+            }
+
+            @Override
+            public int hashCode() {
+                return color * 31 + (underline ? 1 : 0);
+            }
+        }
+
+        /**
+         * 加亮文本的 span，只持有共用的样式与点击事件
+         */
+        static final class HighlightSpan extends ClickableSpan {
+            final HighlightStyle style;
+            final View.OnClickListener onClickListener;
+
+            HighlightSpan(HighlightStyle style, View.OnClickListener onClickListener) {
+                this.style = style;
+                this.onClickListener = onClickListener;
+            }
+
+            @Override
+            public void updateDrawState(@NonNull TextPaint ds) {
+                ds.setColor(style.color);
+                ds.setUnderlineText(style.underline);
+            }
+
+            @Override
+            public void onClick(@NonNull View widget) {
+                if (onClickListener != null) {
+                    onClickListener.onClick(widget);
                 }
+            }
+        }
 
-                @Override
-                public void onClick(@NonNull View widget) {
-                    if (onClickListener != null) {
-                        onClickListener.onClick(widget);
+        /**
+         * 多关键词加亮：按关键词构建 Aho–Corasick 自动机，一次遍历文本找出所有关键词的所有位置
+         * <p>
+         * 重叠时取最靠前、其次最长的匹配；忽略大小写时逐字符折叠（先转大写再转小写），不改变文本长度，与语言无关。
+         * 创建后不可变，可在多个线程间共用
+         */
+        public static final class Highlighter {
+            private final boolean ignoreCase;
+            private final char[][] childChars; // 各节点的子节点字符，已排序
+            private final int[][] childNodes; // 各节点的子节点，与 childChars 对应
+            private final int[] fail; // 失配时跳转的节点
+            private final int[] output; // 以该节点结尾的关键词长度，0 表示没有
+            private final int[] outputLink; // 沿失配链最近的有关键词的节点，-1 表示没有
+
+            public Highlighter(@NonNull Collection<String> keywords, boolean ignoreCase) {
+                this.ignoreCase = ignoreCase;
+                // 构建字典树
+                ArrayList<HashMap<Character, Integer>> children = new ArrayList<>();
+                ArrayList<Integer> lengths = new ArrayList<>();
+                children.add(new HashMap<Character, Integer>());
+                lengths.add(0);
+                for (String keyword : keywords) {
+                    if (keyword == null || keyword.isEmpty())
+                        continue;
+                    int node = 0;
+                    for (int i = 0; i < keyword.length(); i++) {
+                        char c = fold(keyword.charAt(i));
+                        Integer child = children.get(node).get(c);
+                        if (child == null) {
+                            child = children.size();
+                            children.get(node).put(c, child);
+                            children.add(new HashMap<Character, Integer>());
+                            lengths.add(0);
+                        }
+                        node = child;
+                    }
+                    lengths.set(node, keyword.length());
+                }
+                int size = children.size();
+                childChars = new char[size][];
+                childNodes = new int[size][];
+                output = new int[size];
+                for (int node = 0; node < size; node++) {
+                    HashMap<Character, Integer> map = children.get(node);
+                    char[] chars = new char[map.size()];
+                    int i = 0;
+                    for (Character c : map.keySet())
+                        chars[i++] = c;
+                    Arrays.sort(chars);
+                    int[] nodes = new int[chars.length];
+                    for (i = 0; i < chars.length; i++)
+                        nodes[i] = map.get(chars[i]);
+                    childChars[node] = chars;
+                    childNodes[node] = nodes;
+                    output[node] = lengths.get(node);
+                }
+                // 按层遍历，计算失配链
+                fail = new int[size];
+                outputLink = new int[size];
+                outputLink[0] = -1;
+                int[] queue = new int[size];
+                int head = 0, tail = 0;
+                for (int child : childNodes[0]) {
+                    fail[child] = 0;
+                    outputLink[child] = -1;
+                    queue[tail++] = child;
+                }
+                while (head < tail) {
+                    int node = queue[head++];
+                    for (int i = 0; i < childChars[node].length; i++) {
+                        char c = childChars[node][i];
+                        int child = childNodes[node][i];
+                        int f = fail[node];
+                        int next;
+                        while ((next = getChild(f, c)) < 0 && f != 0)
+                            f = fail[f];
+                        fail[child] = next < 0 ? 0 : next;
+                        outputLink[child] = output[fail[child]] > 0 ? fail[child] : outputLink[fail[child]];
+                        queue[tail++] = child;
+                    }
+                }
+            }
+
+            public Highlighter(boolean ignoreCase, @NonNull String... keywords) {
+                this(Arrays.asList(keywords), ignoreCase);
+            }
+
+            /**
+             * 加亮文本中所有关键词
+             *
+             * @param onClickListener 加亮文本的点击事件，可为 null
+             */
+            public SpannableString highlight(@NonNull CharSequence text, @NonNull HighlightStyle style, @Nullable View.OnClickListener onClickListener) {
+                SpannableString spannableString = new SpannableString(text);
+                int length = text.length();
+                if (length == 0 || output.length == 1)
+                    return spannableString;
+                int[] longestEnd = new int[length]; // 以各位置开始的最长匹配的结束位置，0 表示没有
+                boolean found = false;
+                int node = 0;
+                for (int i = 0; i < length; i++) {
+                    char c = fold(text.charAt(i));
+                    int next;
+                    while ((next = getChild(node, c)) < 0 && node != 0)
+                        node = fail[node];
+                    node = next < 0 ? 0 : next;
+                    for (int n = output[node] > 0 ? node : outputLink[node]; n > 0; n = outputLink[n]) {
+                        int start = i + 1 - output[n];
+                        if (longestEnd[start] < i + 1)
+                            longestEnd[start] = i + 1;
+                        found = true;
                     }
                 }
-            }, start, end, Spanned.SPAN_INCLUSIVE_EXCLUSIVE);
+                if (!found)
+                    return spannableString;
+                for (int start = 0, lastEnd = 0; start < length; start++) {
+                    int end = longestEnd[start];
+                    if (end == 0 || start < lastEnd)
+                        continue;
+                    spannableString.setSpan(new HighlightSpan(style, onClickListener), start, end, Spanned.SPAN_INCLUSIVE_EXCLUSIVE);
+                    lastEnd = end;
+                }
+                return spannableString;
+            }
+
+            private int getChild(int node, char c) {
+                int i = Arrays.binarySearch(childChars[node], c);
+                return i < 0 ? -1 : childNodes[node][i];
+            }
+
+            private char fold(char c) {
+                return ignoreCase ? Character.toLowerCase(Character.toUpperCase(c)) : c;
+            }
+        }
+
+        private static final String TEMPLATE_KEY = "highlight"; // 模板中加亮文本的 annotation 属性名
+        private static final SparseArray<SpanPlan> spanPlans = new SparseArray<>(); // 已解析的模板，key：字符串资源ID
+        private static Locale spanPlansLocale; // 已解析的模板所属的语言
+        private static int spanPlansGeneration; // 已解析的模板所属的 Time.generation
+
+        /**
+         * 模板中加亮文本的点击事件
+         */
+        public interface OnHighlightClickListener {
+            /**
+             * @param widget 文本控件
+             * @param id     加亮文本在模板中的 annotation 属性值
+             */
+            void onClick(@NonNull View widget, @NonNull String id);
+        }
+
+        /**
+         * 按模板获取加亮富文本
+         * <p>
+         * 模板为带 annotation 标签的字符串资源，标出的文本加亮，各语言可加亮不同的词，不再按文本查找：
+         * {@code <string name="agreement">我已阅读并同意<annotation highlight="user">《用户协议》</annotation>和<annotation highlight="privacy">《隐私政策》</annotation></string>}
+         * <p>
+         * 模板按（资源ID，语言）解析一次后缓存，之后只创建 span；语言变化或调用 {@link Time#invalidate()} 后重新解析
+         *
+         * @param template        模板的字符串资源ID
+         * @param style           加亮样式
+         * @param onClickListener 加亮文本的点击事件
+         * @return SpannableString
+         */
+        public static SpannableString getTemplateText(@StringRes int template, @NonNull HighlightStyle style, @Nullable OnHighlightClickListener onClickListener) {
+            SpanPlan plan = obtainSpanPlan(template);
+            SpannableString spannableString = new SpannableString(plan.text);
+            for (int i = 0; i < plan.ids.length; i++)
+                spannableString.setSpan(new TemplateSpan(style, plan.ids[i], onClickListener), plan.starts[i], plan.ends[i], Spanned.SPAN_INCLUSIVE_EXCLUSIVE);
             return spannableString;
         }
 
+        /**
+         * 按模板获取加亮富文本，使用默认样式，详见 {@link #getTemplateText(int, HighlightStyle, OnHighlightClickListener)}
+         */
+        public static SpannableString getTemplateText(@StringRes int template, @Nullable OnHighlightClickListener onClickListener) {
+            return getTemplateText(template, HighlightStyle.getDefault(), onClickListener);
+        }
+
+        /**
+         * 按模板设置加亮文本
+         *
+         * @param textView        文本控件
+         * @param template        模板的字符串资源ID
+         * @param onClickListener 加亮文本的点击事件
+         */
+        public static void setTemplateText(@NonNull TextView textView, @StringRes int template, @Nullable OnHighlightClickListener onClickListener) {
+            SpanTouchHelper.attach(textView);
+            textView.setText(getTemplateText(template, onClickListener));
+        }
+
+        /**
+         * 解析后的模板：纯文本及加亮的区间
+         */
+        private static final class SpanPlan {
+            final String text;
+            final int[] starts;
+            final int[] ends;
+            final String[] ids;
+
+            SpanPlan(String text, int[] starts, int[] ends, String[] ids) {
+                this.text = text;
+                this.starts = starts;
+                this.ends = ends;
+                this.ids = ids;
+            }
+        }
+
+        private static SpanPlan obtainSpanPlan(int template) {
+            synchronized (spanPlans) {
+                Locale locale = Locale.getDefault();
+                if (spanPlansLocale != locale || spanPlansGeneration != Time.generation) {
+                    spanPlansLocale = locale;
+                    spanPlansGeneration = Time.generation;
+                    spanPlans.clear();
+                }
+                SpanPlan plan = spanPlans.get(template);
+                if (plan == null) {
+                    plan = parseSpanPlan(Utils.getApp().getText(template));
+                    spanPlans.put(template, plan);
+                }
+                return plan;
+            }
+        }
+
+        private static SpanPlan parseSpanPlan(CharSequence text) {
+            ArrayList<Annotation> annotations = new ArrayList<>();
+            if (text instanceof Spanned) {
+                Spanned spanned = (Spanned) text;
+                for (Annotation annotation : spanned.getSpans(0, text.length(), Annotation.class)) {
+                    if (TEMPLATE_KEY.equals(annotation.getKey()))
+                        annotations.add(annotation);
+                }
+            }
+            int size = annotations.size();
+            int[] starts = new int[size];
+            int[] ends = new int[size];
+            String[] ids = new String[size];
+            for (int i = 0; i < size; i++) {
+                Annotation annotation = annotations.get(i);
+                starts[i] = ((Spanned) text).getSpanStart(annotation);
+                ends[i] = ((Spanned) text).getSpanEnd(annotation);
+                ids[i] = annotation.getValue() == null ? "" : annotation.getValue();
+            }
+            return new SpanPlan(text.toString(), starts, ends, ids);
+        }
+
+        /**
+         * 模板中加亮文本的 span
+         */
+        private static final class TemplateSpan extends ClickableSpan {
+            final HighlightStyle style;
+            final String id;
+            final OnHighlightClickListener onClickListener;
+
+            TemplateSpan(HighlightStyle style, String id, OnHighlightClickListener onClickListener) {
+                this.style = style;
+                this.id = id;
+                this.onClickListener = onClickListener;
+            }
+
+            @Override
+            public void updateDrawState(@NonNull TextPaint ds) {
+                ds.setColor(style.color);
+                ds.setUnderlineText(style.underline);
+            }
+
+            @Override
+            public void onClick(@NonNull View widget) {
+                if (onClickListener != null) {
+                    onClickListener.onClick(widget, id);
+                }
+            }
+        }
+
         /**
          * 设置加亮文本
          *
@@ -109,8 +699,7 @@ public class InternationalUtil {
          * @param onClickListener 加亮文本的点击事件
          */
         public static void setHighlightText(@NonNull TextView textView, @StringRes int allText, @StringRes int highlightText, @Nullable final View.OnClickListener onClickListener) {
-            textView.setHighlightColor(Color.TRANSPARENT);
-            textView.setMovementMethod(LinkMovementMethod.getInstance());
+            SpanTouchHelper.attach(textView);
             textView.setText(getHighlightText(allText, highlightText, onClickListener));
         }
 
@@ -123,9 +712,268 @@ public class InternationalUtil {
          * @param onClickListener 加亮文本的点击事件
          */
         public static void setHighlightText(@NonNull TextView textView, @NonNull String allText, @NonNull String highlightText, @Nullable final View.OnClickListener onClickListener) {
-            textView.setHighlightColor(Color.TRANSPARENT);
-            textView.setMovementMethod(LinkMovementMethod.getInstance());
+            SpanTouchHelper.attach(textView);
             textView.setText(getHighlightText(allText, highlightText, onClickListener));
         }
+
+        /**
+         * 加亮文本的点击处理，代替 LinkMovementMethod
+         * <p>
+         * LinkMovementMethod 会让 TextView 可获取焦点、可滚动，并拦截全部触摸事件，列表中整行的点击失效、滚动变慢；
+         * 这里只在按下的位置有 ClickableSpan 时才接收触摸事件，抬起时仍在同一个 span 上才回调点击，
+         * 其余触摸交给父View处理，TextView 保持不可获取焦点。没有默认点击事件的 TextView 共用一个实例
+         */
+        public static final class SpanTouchHelper implements View.OnTouchListener {
+            private static final SpanTouchHelper INSTANCE = new SpanTouchHelper(null);
+
+            private final View.OnClickListener defaultListener; // 未指定点击事件的 HighlightSpan 的点击事件
+            private ClickableSpan pressedSpan; // 按下的 span，同一时间只有一个触摸序列
+
+            private SpanTouchHelper(View.OnClickListener defaultListener) {
+                this.defaultListener = defaultListener;
+            }
+
+            /**
+             * 给 TextView 设置加亮文本的点击处理
+             */
+            public static void attach(@NonNull TextView textView) {
+                textView.setOnTouchListener(INSTANCE);
+            }
+
+            /**
+             * 给 TextView 设置加亮文本的点击处理，未指定点击事件的 HighlightSpan 回调 defaultListener
+             * <p>
+             * 点击事件只由该 TextView 持有，span 可在多个 TextView 间共用
+             */
+            static void attach(@NonNull TextView textView, @Nullable View.OnClickListener defaultListener) {
+                textView.setOnTouchListener(defaultListener == null ? INSTANCE : new SpanTouchHelper(defaultListener));
+            }
+
+            @Override
+            public boolean onTouch(View v, MotionEvent event) {
+                if (!(v instanceof TextView))
+                    return false;
+                switch (event.getActionMasked()) {
+                    case MotionEvent.ACTION_DOWN:
+                        pressedSpan = findSpan((TextView) v, event);
+                        return pressedSpan != null; // 按在 span 外时不处理，交给父View
+                    case MotionEvent.ACTION_UP:
+                        ClickableSpan span = pressedSpan;
+                        pressedSpan = null;
+                        if (span == null)
+                            return false;
+                        if (span == findSpan((TextView) v, event)) {
+                            if (defaultListener != null && span instanceof HighlightSpan && ((HighlightSpan) span).onClickListener == null)
+                                defaultListener.onClick(v);
+                            else
+                                span.onClick(v);
+                        }
+                        return true;
+                    case MotionEvent.ACTION_CANCEL:
+                        boolean pressed = pressedSpan != null;
+                        pressedSpan = null;
+                        return pressed;
+                    default:
+                        return pressedSpan != null;
+                }
+            }
+
+            /**
+             * 查找触摸位置的 ClickableSpan，使用 TextView 已有的 Layout
+             */
+            private static ClickableSpan findSpan(TextView textView, MotionEvent event) {
+                CharSequence text = textView.getText();
+                Layout layout = textView.getLayout();
+                if (!(text instanceof Spanned) || layout == null)
+                    return null;
+                int x = (int) event.getX() - textView.getTotalPaddingLeft() + textView.getScrollX();
+                int y = (int) event.getY() - textView.getTotalPaddingTop() + textView.getScrollY();
+                int line = layout.getLineForVertical(y);
+                if (y < layout.getLineTop(line) || y > layout.getLineBottom(line) || x < layout.getLineLeft(line) || x > layout.getLineRight(line))
+                    return null;
+                int offset = layout.getOffsetForHorizontal(line, x);
+                ClickableSpan[] spans = ((Spanned) text).getSpans(offset, offset, ClickableSpan.class);
+                return spans == null || spans.length == 0 ? null : spans[0];
+            }
+        }
+
+        private static final int PRECOMPUTED_CACHE_SIZE = 256; // 缓存的预计算文本数
+        private static final WeakHashMap<TextView, PendingText> pendingTexts = new WeakHashMap<>(); // 各 TextView 最近一次异步设置的文本
+        private static LruCache<PrecomputedKey, CharSequence> precomputedCache;
+        private static ExecutorService precomputeExecutor;
+        private static Handler mainHandler;
+
+        /**
+         * 异步设置加亮文本：在后台线程加亮并按 TextView 的参数预计算排版（PrecomputedText，9.0以上版本有效），完成后在主线程设置
+         * <p>
+         * 结果按（文本，关键词，样式，排版参数）缓存，列表中重新绑定同一行时直接设置；
+         * 后台未完成时，最迟在 TextView 下一次绘制前等待结果，不会显示上一行的文本。
+         * 9.0以下版本直接同步设置。须在主线程调用
+         *
+         * @param textView        文本控件
+         * @param allText         全部文本
+         * @param highlighter     关键词，同一组关键词应复用同一个 Highlighter，缓存才能命中
+         * @param style           加亮样式
+         * @param onClickListener 加亮文本的点击事件
+         */
+        public static void setHighlightTextAsync(@NonNull TextView textView, @NonNull CharSequence allText, @NonNull Highlighter highlighter, @NonNull HighlightStyle style, @Nullable View.OnClickListener onClickListener) {
+            SpanTouchHelper.attach(textView, onClickListener);
+            PendingText pending = pendingTexts.remove(textView);
+            if (pending != null)
+                pending.cancel(textView);
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
+                textView.setText(highlighter.highlight(allText, style, null));
+                return;
+            }
+            PrecomputedKey key = new PrecomputedKey(allText.toString(), highlighter, style, textView.getTextMetricsParams());
+            CharSequence cached = obtainPrecomputedCache().get(key);
+            if (cached != null) {
+                textView.setText(cached);
+                return;
+            }
+            pending = new PendingText(textView, key, allText);
+            pendingTexts.put(textView, pending);
+            pending.start(textView);
+        }
+
+        private static synchronized LruCache<PrecomputedKey, CharSequence> obtainPrecomputedCache() {
+            if (precomputedCache == null)
+                precomputedCache = new LruCache<>(PRECOMPUTED_CACHE_SIZE);
+            return precomputedCache;
+        }
+
+        /**
+         * 预计算文本的缓存 key
+         */
+        @TargetApi(Build.VERSION_CODES.P)
+        private static final class PrecomputedKey {
+            final String text;
+            final Highlighter highlighter;
+            final HighlightStyle style;
+            final PrecomputedText.Params params;
+            private final int hashCode;
+
+            PrecomputedKey(String text, Highlighter highlighter, HighlightStyle style, PrecomputedText.Params params) {
+                this.text = text;
+                this.highlighter = highlighter;
+                this.style = style;
+                this.params = params;
+                this.hashCode = ((text.hashCode() * 31 + highlighter.hashCode()) * 31 + style.hashCode()) * 31 + params.hashCode();
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o)
+                    return true;
+                if (!(o instanceof PrecomputedKey))
+                    return false;
+                PrecomputedKey key = (PrecomputedKey) o;
+                return hashCode == key.hashCode && highlighter == key.highlighter && style.equals(key.style)
+                        && text.equals(key.text) && params.equals(key.params);
+            }
+
+            @Override
+            public int hashCode() {
+                return hashCode;
+            }
+        }
+
+        /**
+         * 一次异步设置：后台完成后在主线程设置，或在 TextView 绘制前等待结果后设置，以先到者为准
+         */
+        @TargetApi(Build.VERSION_CODES.P)
+        private static final class PendingText implements Runnable, ViewTreeObserver.OnPreDrawListener {
+            private final WeakReference<TextView> textViewRef;
+            private final PrecomputedKey key;
+            private final CharSequence allText;
+            private Future<CharSequence> future;
+            private boolean finished;
+            private volatile boolean cancelled; // 已被新的设置取代，后台不再计算、不放入缓存
+
+            PendingText(TextView textView, PrecomputedKey key, CharSequence allText) {
+                this.textViewRef = new WeakReference<>(textView);
+                this.key = key;
+                this.allText = allText;
+            }
+
+            void start(TextView textView) {
+                if (precomputeExecutor == null)
+                    precomputeExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "RichText-precompute");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                if (mainHandler == null)
+                    mainHandler = new Handler(Looper.getMainLooper());
+                textView.getViewTreeObserver().addOnPreDrawListener(this);
+                future = precomputeExecutor.submit(new Callable<CharSequence>() {
+                    @Override
+                    public CharSequence call() {
+                        try {
+                            if (cancelled)
+                                return null;
+                            CharSequence text = PrecomputedText.create(key.highlighter.highlight(allText, key.style, null), key.params);
+                            if (!cancelled)
+                                obtainPrecomputedCache().put(key, text);
+                            return text;
+                        } finally {
+                            mainHandler.post(PendingText.this);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void run() {
+                apply();
+            }
+
+            @Override
+            public boolean onPreDraw() {
+                return !apply(); // 已设置新文本时取消本次绘制，按新文本重新布局
+            }
+
+            /**
+             * 设置结果，未完成时等待
+             *
+             * @return 是否设置了文本
+             */
+            private boolean apply() {
+                if (finished)
+                    return false;
+                TextView textView = textViewRef.get();
+                if (textView == null) {
+                    finished = true;
+                    return false;
+                }
+                pendingTexts.remove(textView);
+                finish(textView);
+                try {
+                    textView.setText(future.get());
+                } catch (Exception e) { // 计算失败，或等待期间 TextView 的排版参数已改变，PrecomputedText 不再适用
+                    e.printStackTrace();
+                    textView.setText(key.highlighter.highlight(allText, key.style, null));
+                }
+                return true;
+            }
+
+            private void finish(TextView textView) {
+                finished = true;
+                textView.getViewTreeObserver().removeOnPreDrawListener(this);
+            }
+
+            /**
+             * 被新的设置取代：不再设置结果，取消后台的计算，避免之后的 apply() 在主线程排队等待过时的任务
+             */
+            void cancel(TextView textView) {
+                finish(textView);
+                cancelled = true;
+                if (future != null)
+                    future.cancel(false);
+            }
+        }
     }
 }
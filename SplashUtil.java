@@ -1,21 +1,88 @@
 package com.example.myapplication;
 
 
+import android.annotation.TargetApi;
 import android.app.Activity;
+import android.app.Application;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.Point;
+import android.graphics.Rect;
 import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.LruCache;
+import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.Window;
 import android.view.WindowManager;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
 /**
  * Splash 工具
  */
 public class SplashUtil {
 
-    private static BitmapDrawable drawable;
+    private static LruCache<String, BitmapDrawable> memoryCache; // 各窗口尺寸切好的图片，key：资源ID_宽x高
+    private static ComponentCallbacks2 trimCallbacks; // 内存不足时清空内存缓存
+    private static int memoryCacheSize; // 内存缓存的最大字节数，0 表示按堆内存与窗口尺寸计算
+    private static Bitmap.Config config = Bitmap.Config.ARGB_8888; // 解码的像素格式
+    private static boolean diskCache = true; // 是否把切好的图片缓存到文件
+    private static ExecutorService executor; // 后台解码、写缓存文件
+
+    /**
+     * 设置解码的像素格式，须在 setWindowBackground 前调用
+     *
+     * @param config RGB_565:内存减半，无透明度。 ARGB_8888:默认。 HARDWARE:像素存放在显存（8.0以上版本有效，否则使用 ARGB_8888）
+     */
+    public static void setBitmapConfig(Bitmap.Config config) {
+        SplashUtil.config = config == null ? Bitmap.Config.ARGB_8888 : config;
+    }
+
+    /**
+     * 设置是否把切好的图片缓存到文件，默认开启，须在 setWindowBackground 前调用
+     * <p>
+     * 缓存按资源ID、安装包版本、屏幕尺寸、密度及像素格式区分，之后冷启动直接读取像素，不再解码切图；
+     * 安装包更新或屏幕配置变化后重新生成
+     */
+    public static void setDiskCacheEnabled(boolean enabled) {
+        SplashUtil.diskCache = enabled;
+    }
+
+    /**
+     * 设置内存缓存的最大字节数，默认为最大堆内存的 1/16，且至少能放下一张窗口尺寸的图片，须在 setWindowBackground 前调用
+     * <p>
+     * 旋转、分屏、折叠屏展开后窗口尺寸变化时按新尺寸重新切图，各尺寸的结果都在缓存中；
+     * 应用进入后台或内存不足时清空
+     *
+     * @param maxBytes 最大字节数，0 表示使用默认值
+     */
+    public static void setMemoryCacheSize(int maxBytes) {
+        SplashUtil.memoryCacheSize = Math.max(0, maxBytes);
+        if (memoryCache != null)
+            memoryCache.evictAll();
+        memoryCache = null;
+    }
 
     /**
      * 功能：一张图片适配所有手机
@@ -28,24 +95,606 @@ public class SplashUtil {
         Window window = activity.getWindow();
         if (window == null)
             return;
+        Point point = getWindowSize(activity);
+        if (point == null)
+            return;
+        LruCache<String, BitmapDrawable> cache = obtainMemoryCache(activity, point);
+        String key = drawableResId + "_" + point.x + "x" + point.y;
+        BitmapDrawable drawable = cache.get(key);
         if (drawable == null) {
-            WindowManager windowManager = (WindowManager) activity.getSystemService(Context.WINDOW_SERVICE);
-            if (windowManager == null)
+            Bitmap bitmap = loadBitmap(activity, drawableResId, point.x, point.y);
+            if (bitmap == null)
                 return;
-            Bitmap bitmap = BitmapFactory.decodeResource(activity.getResources(), drawableResId);
-            Point point = new Point();
-            windowManager.getDefaultDisplay().getSize(point);
-            float appScreenRatio = 1f * point.x / point.y; // app 屏幕宽高比
-            int bitmapH = bitmap.getHeight();
-            int bitmapW = bitmap.getWidth();
-            int newBitmapH = bitmapH; // 高度不变
-            int newBitmapW = (int) (newBitmapH * appScreenRatio); // 宽度 按 app 屏幕宽高比计算
-            // 按 app 屏幕高宽比切图
-            Bitmap newBitmap = Bitmap.createBitmap(bitmap,
-                    (bitmapW - newBitmapW) / 2, // x 坐标起始位置
-                    0, newBitmapW, newBitmapH, null, false);
-            drawable = new BitmapDrawable(activity.getResources(), newBitmap);
+            drawable = new BitmapDrawable(activity.getResources(), bitmap);
+            cache.put(key, drawable);
         }
         window.setBackgroundDrawable(drawable);
     }
+
+    /**
+     * 异步加载的回调，在主线程
+     */
+    public interface OnSplashListener {
+        /**
+         * @param decodeMillis 读取缓存文件或解码切图的耗时（毫秒），内存缓存命中时为 0
+         * @param applied      是否已设置为窗口背景，解码完成前已绘制第一帧、Activity 已关闭或解码失败时为 false
+         */
+        void onSplash(long decodeMillis, boolean applied);
+    }
+
+    /**
+     * 功能：同 {@link #setWindowBackground(Activity, int)}，但不阻塞 onCreate
+     * 先设置占位背景，在后台线程解码切图，完成后若第一帧还未绘制则替换为图片，否则不再替换（图片仍放入缓存供下次使用）
+     * 使用方法：在 Activity 的 onCreate 里的 super.onCreate() 前调用
+     *
+     * @param placeholder 占位背景，如纯色的 ColorDrawable 或渐变的 GradientDrawable，null 表示保留主题的背景
+     * @param listener    可为 null
+     */
+    public static void setWindowBackgroundAsync(Activity activity, final int drawableResId, Drawable placeholder, final OnSplashListener listener) {
+        if (activity == null)
+            return;
+        Window window = activity.getWindow();
+        if (window == null)
+            return;
+        final Point point = getWindowSize(activity);
+        if (point == null)
+            return;
+        final LruCache<String, BitmapDrawable> cache = obtainMemoryCache(activity, point);
+        final String key = drawableResId + "_" + point.x + "x" + point.y;
+        BitmapDrawable drawable = cache.get(key);
+        if (drawable != null) {
+            window.setBackgroundDrawable(drawable);
+            if (listener != null)
+                listener.onSplash(0, true);
+            return;
+        }
+        if (placeholder != null)
+            window.setBackgroundDrawable(placeholder);
+
+        final Context appContext = activity.getApplicationContext();
+        final Resources res = activity.getResources();
+        final WeakReference<Activity> activityRef = new WeakReference<>(activity);
+        final Handler handler = new Handler(Looper.getMainLooper());
+        final FirstFrameWatcher watcher = FirstFrameWatcher.watch(activity, handler);
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = SystemClock.uptimeMillis();
+                Bitmap bitmap = loadBitmap(appContext, drawableResId, point.x, point.y);
+                final long decodeMillis = SystemClock.uptimeMillis() - start;
+                final BitmapDrawable result = bitmap == null ? null : new BitmapDrawable(res, bitmap);
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (result != null)
+                            cache.put(key, result);
+                        Activity activity = activityRef.get();
+                        Window window = activity == null ? null : activity.getWindow(); // 在主线程取窗口，后台任务不持有 Activity
+                        boolean drawn = watcher != null ? watcher.isDrawn() : window != null && isFirstFrameDrawn(window.peekDecorView());
+                        if (watcher != null)
+                            watcher.release();
+                        boolean applied = result != null && window != null && !activity.isFinishing() && !drawn;
+                        if (applied)
+                            window.setBackgroundDrawable(result); // 下一帧显示
+                        if (listener != null)
+                            listener.onSplash(decodeMillis, applied);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 窗口是否已绘制第一帧，用于4.1以下版本：按已布局估计，第一次遍历可能只布局、下一次遍历才绘制，偏保守
+     */
+    private static boolean isFirstFrameDrawn(View decorView) {
+        if (decorView == null)
+            return false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT)
+            return decorView.isLaidOut();
+        return decorView.getWidth() > 0;
+    }
+
+    /**
+     * 记录窗口是否已绘制第一帧（4.1以上版本）：第一次 onDraw 时置位
+     * <p>
+     * 第一次遍历可能只布局、跳过绘制（如新建 Surface 时），不能按已布局判断。
+     * 在 onActivityResumed 时添加绘制监听，此时窗口还未添加、未绘制；不在 onCreate 中强制创建 DecorView，以免影响之后的 requestWindowFeature、setTheme。
+     * 在主线程使用
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static final class FirstFrameWatcher implements Application.ActivityLifecycleCallbacks, ViewTreeObserver.OnDrawListener, Runnable {
+        private final WeakReference<Activity> activityRef;
+        private final Application application;
+        private final Handler handler;
+        private View decorView; // 已添加绘制监听的 DecorView
+        private boolean drawn;
+        private boolean watchingLifecycle;
+
+        private FirstFrameWatcher(Activity activity, Handler handler) {
+            this.activityRef = new WeakReference<>(activity);
+            this.application = activity.getApplication();
+            this.handler = handler;
+        }
+
+        /**
+         * @return 4.1以下版本返回 null
+         */
+        static FirstFrameWatcher watch(Activity activity, Handler handler) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN)
+                return null;
+            FirstFrameWatcher watcher = new FirstFrameWatcher(activity, handler);
+            View decorView = activity.getWindow().peekDecorView();
+            if (decorView != null && decorView.getWindowToken() != null) { // 已添加到窗口，可能已错过第一帧，按已布局估计
+                watcher.drawn = isFirstFrameDrawn(decorView);
+                watcher.addDrawListener(decorView);
+            } else if (watcher.application != null) {
+                watcher.watchingLifecycle = true;
+                watcher.application.registerActivityLifecycleCallbacks(watcher);
+            }
+            return watcher;
+        }
+
+        boolean isDrawn() {
+            return drawn;
+        }
+
+        /**
+         * 移除所有监听，不能在 onDraw 中调用
+         */
+        void release() {
+            if (watchingLifecycle) {
+                watchingLifecycle = false;
+                application.unregisterActivityLifecycleCallbacks(this);
+            }
+            if (decorView != null) {
+                ViewTreeObserver observer = decorView.getViewTreeObserver();
+                if (observer.isAlive())
+                    observer.removeOnDrawListener(this);
+                decorView = null;
+            }
+        }
+
+        private void addDrawListener(View decorView) {
+            this.decorView = decorView;
+            decorView.getViewTreeObserver().addOnDrawListener(this);
+        }
+
+        @Override
+        public void onDraw() {
+            if (drawn)
+                return;
+            drawn = true;
+            handler.post(this); // onDraw 中不能移除绘制监听
+        }
+
+        @Override
+        public void run() {
+            release();
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+            if (activity != activityRef.get() || decorView != null)
+                return;
+            addDrawListener(activity.getWindow().getDecorView());
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            if (activity == activityRef.get())
+                release();
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+    }
+
+    /**
+     * 读取缓存文件，未命中时解码切图并写入缓存文件
+     */
+    private static Bitmap loadBitmap(Context context, int resId, int width, int height) {
+        Bitmap bitmap = diskCache ? DiskCache.load(context, resId, width, height) : null;
+        if (bitmap == null) {
+            bitmap = decodeCroppedBitmap(context.getResources(), resId, width, height);
+            if (bitmap != null && diskCache)
+                DiskCache.save(context, resId, width, height, bitmap);
+        }
+        return bitmap;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null)
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "SplashUtil");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        return executor;
+    }
+
+    /**
+     * 获取窗口尺寸：11.0以上版本使用当前窗口的尺寸，7.0以上版本分屏时按 Configuration 计算，否则使用屏幕尺寸
+     *
+     * @return 获取失败时返回 null
+     */
+    private static Point getWindowSize(Activity activity) {
+        WindowManager windowManager = (WindowManager) activity.getSystemService(Context.WINDOW_SERVICE);
+        if (windowManager == null)
+            return null;
+        Point point = new Point();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            Rect bounds = windowManager.getCurrentWindowMetrics().getBounds();
+            point.set(bounds.width(), bounds.height());
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && activity.isInMultiWindowMode()) {
+            Configuration configuration = activity.getResources().getConfiguration();
+            float density = activity.getResources().getDisplayMetrics().density;
+            point.set(Math.round(configuration.screenWidthDp * density), Math.round(configuration.screenHeightDp * density));
+        } else {
+            windowManager.getDefaultDisplay().getSize(point);
+        }
+        return point.x > 0 && point.y > 0 ? point : null;
+    }
+
+    /**
+     * 获取内存缓存，默认大小放不下该窗口尺寸的图片时按新尺寸重新创建
+     */
+    private static LruCache<String, BitmapDrawable> obtainMemoryCache(Context context, Point windowSize) {
+        int maxSize = memoryCacheSize;
+        if (maxSize == 0) {
+            long maxMemory = Runtime.getRuntime().maxMemory();
+            long windowBytes = (long) windowSize.x * windowSize.y * (config == Bitmap.Config.RGB_565 ? 2 : 4); // 切图最大为窗口尺寸
+            maxSize = (int) Math.min(Math.min(Math.max(maxMemory / 16, windowBytes), maxMemory / 4), Integer.MAX_VALUE);
+            if (memoryCache != null && memoryCache.maxSize() < maxSize) { // 窗口变大，如折叠屏展开
+                memoryCache.evictAll();
+                memoryCache = null;
+            }
+        }
+        if (memoryCache == null) {
+            memoryCache = new LruCache<String, BitmapDrawable>(Math.max(1, maxSize)) {
+                @Override
+                protected int sizeOf(String key, BitmapDrawable value) {
+                    Bitmap bitmap = value.getBitmap();
+                    if (bitmap == null)
+                        return 0;
+                    return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT ? bitmap.getAllocationByteCount() : bitmap.getByteCount();
+                }
+            };
+        }
+        if (trimCallbacks == null) {
+            trimCallbacks = new ComponentCallbacks2() {
+                @Override
+                public void onTrimMemory(int level) {
+                    LruCache<String, BitmapDrawable> cache = memoryCache;
+                    if (cache == null)
+                        return;
+                    if (level >= TRIM_MEMORY_UI_HIDDEN) // 已不在前台，启动页不会再显示
+                        cache.evictAll();
+                    else if (level >= TRIM_MEMORY_RUNNING_LOW)
+                        cache.trimToSize(cache.maxSize() / 2);
+                }
+
+                @Override
+                public void onConfigurationChanged(Configuration newConfig) {
+                }
+
+                @Override
+                public void onLowMemory() {
+                    LruCache<String, BitmapDrawable> cache = memoryCache;
+                    if (cache != null)
+                        cache.evictAll();
+                }
+            };
+            context.getApplicationContext().registerComponentCallbacks(trimCallbacks);
+        }
+        return memoryCache;
+    }
+
+    /**
+     * 按屏幕宽高比切图，大于屏幕时缩小到屏幕尺寸
+     * <p>
+     * 先只读取图片尺寸，再用 BitmapRegionDecoder 只解码切图区域，inSampleSize 按屏幕尺寸计算，
+     * 不再生成原尺寸的中间图片；不支持区域解码的格式则整张缩小解码后再切图。
+     * 解码结果为屏幕尺寸的 1~2 倍，最后缩小到屏幕尺寸，内存缓存与缓存文件最多占一张屏幕大小；
+     * 原图比屏幕小时保持原尺寸，不放大，由窗口背景绘制时拉伸
+     *
+     * @param width  屏幕宽度
+     * @param height 屏幕高度
+     * @return 解码失败时返回 null
+     */
+    static Bitmap decodeCroppedBitmap(Resources res, int resId, int width, int height) {
+        if (width <= 0 || height <= 0)
+            return null;
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeStream(res, resId, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+            return null;
+
+        Rect region = getCropRegion(options.outWidth, options.outHeight, 1f * width / height);
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = getSampleSize(region.width(), region.height(), width, height);
+        boolean hardware = isHardwareConfig();
+        options.inPreferredConfig = hardware ? Bitmap.Config.ARGB_8888 : config; // 区域解码不支持 HARDWARE，解码后再复制
+        Bitmap bitmap = decodeRegion(res, resId, region, options);
+        if (bitmap == null)
+            bitmap = decodeAndCrop(res, resId, region, options);
+        bitmap = scale(bitmap, width, height);
+        return hardware ? toHardware(bitmap) : bitmap;
+    }
+
+    /**
+     * 按比例缩小到不超过指定尺寸并回收原图片，不放大；无需缩小或缩小失败时返回原图片
+     */
+    private static Bitmap scale(Bitmap bitmap, int width, int height) {
+        if (bitmap == null)
+            return null;
+        float ratio = Math.min(1f * width / bitmap.getWidth(), 1f * height / bitmap.getHeight());
+        if (ratio >= 1f)
+            return bitmap;
+        Bitmap scaled;
+        try {
+            scaled = Bitmap.createScaledBitmap(bitmap, Math.max(1, Math.round(bitmap.getWidth() * ratio)),
+                    Math.max(1, Math.round(bitmap.getHeight() * ratio)), true);
+        } catch (OutOfMemoryError e) {
+            e.printStackTrace();
+            return bitmap;
+        }
+        if (scaled != bitmap)
+            bitmap.recycle();
+        return scaled;
+    }
+
+    /**
+     * 复制为 HARDWARE 格式并回收原图片，复制失败时返回原图片
+     */
+    @TargetApi(Build.VERSION_CODES.O)
+    private static Bitmap toHardware(Bitmap bitmap) {
+        if (bitmap == null)
+            return null;
+        Bitmap copy = bitmap.copy(Bitmap.Config.HARDWARE, false);
+        if (copy == null)
+            return bitmap;
+        bitmap.recycle();
+        return copy;
+    }
+
+    /**
+     * 是否使用 HARDWARE 格式，8.0以下版本没有该枚举值，须先判断版本
+     */
+    private static boolean isHardwareConfig() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && config == Bitmap.Config.HARDWARE;
+    }
+
+    /**
+     * 按 app 屏幕宽高比计算切图区域（居中）：图片较宽时高度不变，较窄时宽度不变
+     *
+     * @param screenRatio app 屏幕宽高比
+     */
+    private static Rect getCropRegion(int bitmapW, int bitmapH, float screenRatio) {
+        int newBitmapW = (int) (bitmapH * screenRatio); // 宽度 按 app 屏幕宽高比计算
+        if (newBitmapW <= bitmapW)
+            return new Rect((bitmapW - newBitmapW) / 2, 0, (bitmapW + newBitmapW) / 2, bitmapH);
+        int newBitmapH = Math.max(1, (int) (bitmapW / screenRatio));
+        return new Rect(0, (bitmapH - newBitmapH) / 2, bitmapW, (bitmapH + newBitmapH) / 2);
+    }
+
+    /**
+     * 计算 inSampleSize：缩小后的尺寸不小于屏幕尺寸的最大2的幂
+     */
+    private static int getSampleSize(int regionW, int regionH, int width, int height) {
+        int sampleSize = 1;
+        while (regionW / (sampleSize * 2) >= width && regionH / (sampleSize * 2) >= height)
+            sampleSize *= 2;
+        return sampleSize;
+    }
+
+    private static Bitmap decodeRegion(Resources res, int resId, Rect region, BitmapFactory.Options options) {
+        InputStream is = null;
+        BitmapRegionDecoder decoder = null;
+        try {
+            is = res.openRawResource(resId);
+            decoder = BitmapRegionDecoder.newInstance(is, false);
+            return decoder == null ? null : decoder.decodeRegion(region, options);
+        } catch (Exception e) { // 不支持的格式
+            e.printStackTrace();
+            return null;
+        } finally {
+            if (decoder != null)
+                decoder.recycle();
+            close(is);
+        }
+    }
+
+    /**
+     * 整张缩小解码后再切图，用于不支持区域解码的格式
+     */
+    private static Bitmap decodeAndCrop(Resources res, int resId, Rect region, BitmapFactory.Options options) {
+        Bitmap bitmap = decodeStream(res, resId, options);
+        if (bitmap == null)
+            return null;
+        int sampleSize = options.inSampleSize;
+        int x = Math.min(region.left / sampleSize, bitmap.getWidth() - 1);
+        int y = Math.min(region.top / sampleSize, bitmap.getHeight() - 1);
+        int w = Math.max(1, Math.min(region.width() / sampleSize, bitmap.getWidth() - x));
+        int h = Math.max(1, Math.min(region.height() / sampleSize, bitmap.getHeight() - y));
+        Bitmap newBitmap = Bitmap.createBitmap(bitmap, x, y, w, h, null, false);
+        if (newBitmap != bitmap)
+            bitmap.recycle();
+        return newBitmap;
+    }
+
+    /**
+     * 解码原始资源，不按 drawable 目录的密度缩放
+     */
+    private static Bitmap decodeStream(Resources res, int resId, BitmapFactory.Options options) {
+        InputStream is = null;
+        try {
+            is = res.openRawResource(resId);
+            return BitmapFactory.decodeStream(is, null, options);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            close(is);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 切好的图片的文件缓存：文件头加原始像素，读取时内存映射后直接复制到 Bitmap，无需解码
+     * <p>
+     * 文件名包含资源ID、安装包版本（安装包的修改时间与大小）、屏幕尺寸、密度及像素格式，任一变化即不再命中；
+     * 写入在后台线程，先写临时文件再改名，写完后删除该资源旧版本的缓存文件（其他窗口尺寸的保留）
+     */
+    private static final class DiskCache {
+        private static final String DIR = "splash";
+        private static final int MAGIC = 0x53504c31; // "SPL1"
+        private static final int HEADER_SIZE = 32; // magic、宽、高、像素格式、像素字节数，其余保留
+        private static final int CONFIG_ARGB_8888 = 0;
+        private static final int CONFIG_RGB_565 = 1;
+
+        static Bitmap load(Context context, int resId, int width, int height) {
+            File file = getFile(context, resId, width, height);
+            if (file == null || !file.isFile())
+                return null;
+            RandomAccessFile raf = null;
+            try {
+                raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel();
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+                    return null;
+                int w = buffer.getInt(4), h = buffer.getInt(8), configCode = buffer.getInt(12), byteCount = buffer.getInt(16);
+                Bitmap.Config bitmapConfig = configCode == CONFIG_RGB_565 ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+                if (w <= 0 || h <= 0 || buffer.capacity() < HEADER_SIZE + byteCount)
+                    return null;
+                Bitmap bitmap = Bitmap.createBitmap(w, h, bitmapConfig);
+                if (bitmap.getByteCount() != byteCount) {
+                    bitmap.recycle();
+                    return null;
+                }
+                buffer.position(HEADER_SIZE);
+                bitmap.copyPixelsFromBuffer(buffer);
+                return isHardwareConfig() ? toHardware(bitmap) : bitmap;
+            } catch (Exception e) { // 文件损坏
+                e.printStackTrace();
+                file.delete();
+                return null;
+            } finally {
+                close(raf);
+            }
+        }
+
+        static void save(Context context, final int resId, int width, int height, final Bitmap bitmap) {
+            final File file = getFile(context, resId, width, height);
+            if (file == null)
+                return;
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    write(file, bitmap);
+                    String prefix = "splash_" + resId + "_";
+                    String name = file.getName();
+                    deleteStale(file.getParentFile(), prefix, name.substring(0, name.indexOf('_', prefix.length()) + 1));
+                }
+            });
+        }
+
+        private static void write(File file, Bitmap bitmap) {
+            Bitmap source = bitmap;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && bitmap.getConfig() == Bitmap.Config.HARDWARE)
+                source = bitmap.copy(Bitmap.Config.ARGB_8888, false); // 显存中的像素不能直接读取
+            if (source == null || source.isRecycled())
+                return;
+            int configCode = source.getConfig() == Bitmap.Config.RGB_565 ? CONFIG_RGB_565 : CONFIG_ARGB_8888;
+            if (configCode == CONFIG_ARGB_8888 && source.getConfig() != Bitmap.Config.ARGB_8888)
+                return; // 其他格式不缓存
+            File tmp = new File(file.getPath() + ".tmp");
+            RandomAccessFile raf = null;
+            try {
+                int byteCount = source.getByteCount();
+                raf = new RandomAccessFile(tmp, "rw");
+                raf.setLength(HEADER_SIZE + byteCount);
+                MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + byteCount);
+                buffer.putInt(MAGIC).putInt(source.getWidth()).putInt(source.getHeight()).putInt(configCode).putInt(byteCount);
+                buffer.position(HEADER_SIZE);
+                source.copyPixelsToBuffer(buffer);
+                buffer.force();
+                close(raf);
+                raf = null;
+                if (!tmp.renameTo(file))
+                    tmp.delete();
+            } catch (Exception e) {
+                e.printStackTrace();
+                tmp.delete();
+            } finally {
+                close(raf);
+                if (source != bitmap)
+                    source.recycle();
+            }
+        }
+
+        /**
+         * 删除该资源旧版本的缓存文件
+         *
+         * @param prefix        该资源的文件名前缀
+         * @param versionPrefix 该资源当前版本的文件名前缀
+         */
+        private static void deleteStale(File dir, String prefix, String versionPrefix) {
+            File[] files = dir == null ? null : dir.listFiles();
+            if (files == null)
+                return;
+            for (File f : files) {
+                if (f.getName().startsWith(prefix) && !f.getName().startsWith(versionPrefix))
+                    f.delete();
+            }
+        }
+
+        /**
+         * 缓存文件：splash_资源ID_版本_宽x高_密度_像素格式
+         */
+        private static File getFile(Context context, int resId, int width, int height) {
+            File cacheDir = context.getCacheDir();
+            if (cacheDir == null)
+                return null;
+            File dir = new File(cacheDir, DIR);
+            if (!dir.isDirectory() && !dir.mkdirs())
+                return null;
+            File apk = new File(context.getApplicationInfo().sourceDir);
+            String version = Long.toHexString(apk.lastModified()) + Long.toHexString(apk.length());
+            int densityDpi = context.getResources().getDisplayMetrics().densityDpi;
+            String configName = isHardwareConfig() ? "HARDWARE" : config.name();
+            return new File(dir, "splash_" + resId + "_" + version + "_" + width + "x" + height + "_" + densityDpi + "_" + configName);
+        }
+    }
 }